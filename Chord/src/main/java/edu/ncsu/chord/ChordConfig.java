@@ -9,11 +9,28 @@ import java.util.ArrayList;
  */
 class ChordConfig {
 
-  /* Depending on CHORD_ID_MAX_BITS in each ChordID will be calculated. This is also used in finger table */
-  static int CHORD_ID_MAX_BITS = 10;
+  /* Depending on CHORD_ID_MAX_BITS in each ChordID will be calculated. This is also used in finger table.
+  Can be at most SHA256Hash.MAX_SUPPORTED_BITS (160) */
+  static int CHORD_ID_MAX_BITS = 160;
+
+  /* Function hashing node addresses and keys to IDs (-Dchord.hash=SHA256|MURMUR3_UTF16). Every
+  node and client of a cluster must be started with the same one */
+  static HashFunction HASH_FUNCTION = HashFunction.valueOf(System.getProperty("chord.hash", "SHA256"));
+
+  /* Routing mode used for lookups started on this node (-Dchord.lookupMode=ITERATIVE|RECURSIVE|
+  ONE_HOP). ONE_HOP is meant for clusters small enough for every node to know all others */
+  static LookupMode LOOKUP_MODE =
+      LookupMode.valueOf(System.getProperty("chord.lookupMode", "ITERATIVE"));
+
+  /* Number of membership exchanges in which a node passes on each membership change it hears of */
+  static int MEMBERSHIP_GOSSIP_SENDS = 12;
+
+  /* Every this many stabilization rounds the full membership table is exchanged with the
+  successor instead of recent changes only, repairing whatever gossip missed */
+  static int MEMBERSHIP_FULL_SYNC_ROUNDS = 30;
 
   /* Number of maximum entries to keep in successor list */
-  static int SUCCESSOR_LIST_MAX_SIZE = 3;
+  static int SUCCESSOR_LIST_MAX_SIZE = 8;
 
   /* ArrayList of IPs of all bootstrap nodes */
   static ArrayList<InetAddress> bootstrapNodes;
@@ -27,9 +44,33 @@ class ChordConfig {
     }
   }
 
+  /* Number of virtual nodes hosted by each process. All of them share one RMI registry and one
+  object store. Bigger machines can be given more virtual nodes (-Dchord.virtualNodes) so that they
+  own a proportionally bigger part of the keyspace */
+  static int VIRTUAL_NODES = Integer.getInteger("chord.virtualNodes", 1);
+
+  /* Transport used for calls to other chord nodes (-Dchord.transport=NIO|RMI). Every node is
+  always exported over RMI too, and RMI is used for a peer that can not be reached over NIO */
+  static TransportMode TRANSPORT = TransportMode.valueOf(System.getProperty("chord.transport", "RMI"));
+
+  /* Port on which NIO transport listens */
+  static int NIO_PORT = 1100;
+
+  /* Threads running incoming NIO calls of all virtual nodes of this process */
+  static int NIO_WORKER_THREADS = 16;
+
+  /* Milliseconds to wait for a NIO connection to open */
+  static int NIO_CONNECT_TIMEOUT = 2000;
+
+  /* Milliseconds to wait for the reply of a NIO call */
+  static long NIO_CALL_TIMEOUT = 5000;
+
   /* RMI Registry Port */
   static int RMI_REGISTRY_PORT = 1099;
 
+  /* Seconds for which a cached RMI stub of a peer is used before it is looked up again */
+  static int RMI_STUB_CACHE_TTL = 30;
+
   /* Network interface to be used for communication */
   static String NetworkInterface = "eth0";
 
@@ -38,4 +79,59 @@ class ChordConfig {
 
   /* Seconds after which stabilizer function should be called again */
   static int STABILIZER_PERIOD = 2;
+
+  /* Longest period in seconds stabilization backs off to while the routing state is unchanged */
+  static int STABILIZER_MAX_PERIOD = 30;
+
+  /* Fraction of the period by which each stabilization round is randomly moved earlier or later */
+  static double STABILIZER_JITTER = 0.2;
+
+  /* Seconds to wait for a running stabilization round to finish when stabilization is stopped */
+  static int STABILIZER_STOP_TIMEOUT = 10;
+
+  /* Most hops a lookup takes before it is given up. Lookups take about log2 of the ring size hops,
+  many more only happen while routing state points in circles */
+  static int MAX_LOOKUP_HOPS = 64;
+
+  /* Milliseconds a lookup waits for another lookup in flight before it routes on its own */
+  static long LOOKUP_COALESCE_TIMEOUT = 5000;
+
+  /* Most predecessor pointers stabilize follows in one round to reach the true successor */
+  static int STABILIZE_MAX_STEPS = 32;
+
+  /* Number of threads used to lookup finger table entries concurrently */
+  static int FINGER_FIX_THREADS = 4;
+
+  /* Seconds for which a measured round trip time of a peer is trusted. Fingers only prefer
+  low latency nodes that have been measured within this time */
+  static int PEER_RTT_MAX_AGE = 30;
+
+  /* Suspicion level (phi) above which a peer is treated as failed. 8 means roughly 1 in 10^8
+  chance that the peer is alive and its heartbeat is only late */
+  static double PHI_THRESHOLD = 8.0;
+
+  /* Number of recent heartbeat intervals kept per peer by the failure detector */
+  static int FAILURE_DETECTOR_WINDOW = 100;
+
+  /* Milliseconds. Heartbeats closer than this to the previous one are not counted as intervals */
+  static long FAILURE_DETECTOR_MIN_INTERVAL = 500;
+
+  /* Milliseconds. Heartbeat interval assumed for a peer heard from only once */
+  static long FAILURE_DETECTOR_FIRST_INTERVAL = STABILIZER_PERIOD * 1000L;
+
+  /* Milliseconds. Extra silence tolerated on top of the mean interval. Peers are contacted from
+  stabilization rounds, which back off up to STABILIZER_MAX_PERIOD while nothing changes, so a gap
+  that long is not a sign of failure */
+  static long FAILURE_DETECTOR_ACCEPTABLE_PAUSE = STABILIZER_MAX_PERIOD * 1000L;
+
+  /* Milliseconds. Lower bound of interval deviation so that very regular peers are not
+  suspected after the first late heartbeat */
+  static long FAILURE_DETECTOR_MIN_STD_DEVIATION = 500;
+
+  /* Milliseconds. A suspected peer is still dialed this often to find out if it is back */
+  static long FAILURE_DETECTOR_PROBE_INTERVAL = 10000;
+
+  /* Number of finger entries looked up remotely in each stabilization round. Each round continues
+  from where previous one stopped. 0 means look up every finger in every round */
+  static int FINGERS_PER_ROUND = 0;
 }
@@ -2,44 +2,127 @@ package edu.ncsu.chord;
 
 import org.apache.log4j.Logger;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 /**
  * Created by amit on 10/2/17. Every chord ID must have an input value(which is) associated with it
  * such as InetAddress if its a chord node or String if its a key for an object.
  */
-public class ChordID<T> extends SHA256Hash implements Serializable {
+public class ChordID<T> extends SHA256Hash {
 
   /* Each Chord ID must have an associated input key which is hashed to generated the ChordID
   This key can be an InetAddress in case of a node or a simple String in case of key of an object */
   T key = null;
 
+  /* Index of the virtual node this ID belongs to when a process hosts several chord nodes.
+  Virtual node 0 is hashed from key alone so that it keeps the ID a single node would have */
+  int virtualIndex = 0;
+
   /* Depending on CHORD_ID_MAX_BITS in each ChordID will be calculated. This is also used in finger table */
   public static final int MAX_BITS = ChordConfig.CHORD_ID_MAX_BITS;
 
   /* Keep all loggers transient so that they are not passed over RMI call */
   private final transient static Logger logger = Logger.getLogger(ChordID.class);
 
+  /* Tags written in front of the key by writeExternal */
+  private static final byte KEY_ADDRESS = 1;
+  private static final byte KEY_STRING = 2;
+  private static final byte KEY_OBJECT = 3;
+
+  /* Only for deserialization, readExternal fills in the ID */
+  public ChordID() {
+  }
+
   public ChordID(T key) {
-    super(key.toString(), MAX_BITS);
+    this(key, 0);
+  }
+
+  public ChordID(T key, int virtualIndex) {
+    super(virtualIndex == 0 ? key.toString() : key.toString() + "#" + virtualIndex, MAX_BITS);
     this.key = key;
+    this.virtualIndex = virtualIndex;
   }
 
+  /* Rebuilds an ID from its hash words, e.g. one received over the wire, without hashing key again */
+  ChordID(T key, int virtualIndex, long high, long mid, long low, int bits) {
+    super(high, mid, low, bits);
+    this.key = key;
+    this.virtualIndex = virtualIndex;
+  }
 
   public T getKey() {
     return key;
   }
 
+  public int getVirtualIndex() {
+    return virtualIndex;
+  }
+
+  /**
+   * Writes the hash followed by the key: node addresses as their raw bytes and object keys as
+   * length prefixed UTF-8, so neither is hashed again nor described field by field on the wire.
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    if (key instanceof InetAddress) {
+      byte[] address = ((InetAddress) key).getAddress();
+      out.writeByte(KEY_ADDRESS);
+      out.writeByte(address.length);
+      out.write(address);
+    } else if (key instanceof String) {
+      out.writeByte(KEY_STRING);
+      ChordWireCodec.writeCompactString(out, (String) key);
+    } else {
+      out.writeByte(KEY_OBJECT);
+      out.writeObject(key);
+    }
+    ChordWireCodec.writeVarInt(out, virtualIndex);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    byte tag = in.readByte();
+    if (tag == KEY_ADDRESS) {
+      byte[] address = new byte[in.readUnsignedByte()];
+      in.readFully(address);
+      try {
+        key = (T) InetAddress.getByAddress(address);
+      } catch (UnknownHostException e) {
+        throw new InvalidObjectException("Bad address length " + address.length);
+      }
+    } else if (tag == KEY_STRING) {
+      key = (T) ChordWireCodec.readCompactString(in);
+    } else if (tag == KEY_OBJECT) {
+      key = (T) in.readObject();
+    } else {
+      throw new InvalidObjectException("Unknown key tag " + tag);
+    }
+    virtualIndex = ChordWireCodec.readVarInt(in);
+  }
+
   public String toString() {
+    if (virtualIndex != 0) {
+      return "[" + key + "#" + virtualIndex + "," + getValue() + "]";
+    }
     return "[" + key + "," + getValue() + "]";
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (obj == null || !(obj instanceof SHA256Hash))
+    if (obj == this)
+      return true;
+    if (obj == null || !(obj instanceof ChordID))
       return false;
-    ChordID<T> hash = (ChordID<T>) obj;
-    return hash.key.equals(this.key) && hash.getValue().equals(this.getValue());
+    ChordID<?> hash = (ChordID<?>) obj;
+    return super.equals(hash) && hash.virtualIndex == this.virtualIndex && hash.key.equals(this.key);
   }
 
   @Override
@@ -0,0 +1,287 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+
+/**
+ * Registry behind ChordMetricsMXBean. Hot paths only bump LongAdders and Log2Histograms; every
+ * aggregate, including those of the stub cache, upcall dispatchers and schedulers, is computed when
+ * JMX reads an attribute. Nothing is logged or formatted unless someone scrapes.
+ */
+final class ChordMetrics implements ChordMetricsMXBean {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(ChordMetrics.class);
+
+  /* Remote calls, one for each ChordOperations method */
+  enum Rpc {
+    GET_SUCCESSOR,
+    FIND_SUCCESSOR_OF,
+    GET_SUCCESSOR_LIST,
+    GET_FINGER_NODES,
+    GET_PREDECESSOR,
+    FIND_PREDECESSOR_OF,
+    GET_CLOSEST_PRECEDING_FINGER,
+    FIND_SUCCESSOR,
+    GET_SUCCESSORS,
+    NOTIFY,
+    NOTIFY_LEAVE,
+    EXCHANGE_MEMBERSHIP
+  }
+
+  static final ChordMetrics INSTANCE = new ChordMetrics();
+
+  private static final String OBJECT_NAME = "edu.ncsu.chord:type=ChordMetrics";
+
+  private final Log2Histogram[] rpcLatencyMicros = new Log2Histogram[Rpc.values().length];
+
+  private final LongAdder[] rpcFailures = new LongAdder[Rpc.values().length];
+
+  private final Log2Histogram lookupHops = new Log2Histogram();
+
+  private final LongAdder coalescedLookups = new LongAdder();
+
+  private final Log2Histogram stabilizationRoundMillis = new Log2Histogram();
+
+  private final LongAdder fingerChanges = new LongAdder();
+
+  private final LongAdder successorFailovers = new LongAdder();
+
+  private final LongAdder predecessorFailures = new LongAdder();
+
+  /* Sources of the gauges, added as sessions join and dropped as they leave */
+  private final List<ChordNode> nodes = new CopyOnWriteArrayList<>();
+
+  private final List<StabilizationScheduler> schedulers = new CopyOnWriteArrayList<>();
+
+  private boolean registered = false;
+
+  private ChordMetrics() {
+    for (Rpc rpc : Rpc.values()) {
+      rpcLatencyMicros[rpc.ordinal()] = new Log2Histogram();
+      rpcFailures[rpc.ordinal()] = new LongAdder();
+    }
+  }
+
+  /* Adds gauges of a joined session and makes sure the MXBean is registered */
+  static synchronized void register(List<ChordNode> sessionNodes, StabilizationScheduler scheduler) {
+    INSTANCE.nodes.addAll(sessionNodes);
+    INSTANCE.schedulers.add(scheduler);
+    if (INSTANCE.registered) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException e) {
+      logger.debug(OBJECT_NAME + " is already registered");
+    } catch (Exception e) {
+      logger.error("Unable to register " + OBJECT_NAME, e);
+    }
+    INSTANCE.registered = true;
+  }
+
+  /* Drops gauges of a session that left, so that its nodes and scheduler can be collected. The
+  MXBean and the counters stay, they cover the whole life of the process */
+  static synchronized void unregister(List<ChordNode> sessionNodes,
+                                      StabilizationScheduler scheduler) {
+    INSTANCE.nodes.removeAll(sessionNodes);
+    INSTANCE.schedulers.remove(scheduler);
+  }
+
+  static void recordRpc(Rpc rpc, long startNanos) {
+    INSTANCE.rpcLatencyMicros[rpc.ordinal()].record(
+        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+  }
+
+  static void recordRpcFailure(Rpc rpc) {
+    INSTANCE.rpcFailures[rpc.ordinal()].increment();
+  }
+
+  static void recordLookup(int hops) {
+    INSTANCE.lookupHops.record(hops);
+  }
+
+  static void recordCoalescedLookup() {
+    INSTANCE.coalescedLookups.increment();
+  }
+
+  static void recordStabilizationRound(long startNanos) {
+    INSTANCE.stabilizationRoundMillis.record(
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  static void recordFingerChanges(int changes) {
+    INSTANCE.fingerChanges.add(changes);
+  }
+
+  static void recordSuccessorFailover() {
+    INSTANCE.successorFailovers.increment();
+  }
+
+  static void recordPredecessorFailure() {
+    INSTANCE.predecessorFailures.increment();
+  }
+
+  private <V> Map<String, V> perRpc(Function<Rpc, V> value) {
+    Map<String, V> values = new LinkedHashMap<>();
+    for (Rpc rpc : Rpc.values()) {
+      values.put(rpc.name(), value.apply(rpc));
+    }
+    return values;
+  }
+
+  @Override
+  public Map<String, Long> getRpcCalls() {
+    return perRpc(rpc -> rpcLatencyMicros[rpc.ordinal()].getCount() + rpcFailures[rpc.ordinal()].sum());
+  }
+
+  @Override
+  public Map<String, Long> getRpcFailures() {
+    return perRpc(rpc -> rpcFailures[rpc.ordinal()].sum());
+  }
+
+  @Override
+  public Map<String, Double> getRpcMeanLatencyMicros() {
+    return perRpc(rpc -> rpcLatencyMicros[rpc.ordinal()].getMean());
+  }
+
+  @Override
+  public Map<String, Long> getRpc99thPercentileLatencyMicros() {
+    return perRpc(rpc -> rpcLatencyMicros[rpc.ordinal()].getPercentile(0.99));
+  }
+
+  @Override
+  public long getLookups() {
+    return lookupHops.getCount();
+  }
+
+  @Override
+  public double getMeanLookupHops() {
+    return lookupHops.getMean();
+  }
+
+  @Override
+  public long[] getLookupHopHistogram() {
+    return lookupHops.getBuckets();
+  }
+
+  @Override
+  public long getCoalescedLookups() {
+    return coalescedLookups.sum();
+  }
+
+  @Override
+  public long getStabilizationRounds() {
+    return stabilizationRoundMillis.getCount();
+  }
+
+  @Override
+  public double getMeanStabilizationRoundMillis() {
+    return stabilizationRoundMillis.getMean();
+  }
+
+  @Override
+  public long get99thPercentileStabilizationRoundMillis() {
+    return stabilizationRoundMillis.getPercentile(0.99);
+  }
+
+  @Override
+  public long getStabilizationPeriodMillis() {
+    long period = 0;
+    for (StabilizationScheduler scheduler : schedulers) {
+      period = Math.max(period, scheduler.getCurrentPeriodMillis());
+    }
+    return period;
+  }
+
+  @Override
+  public long getFingerChanges() {
+    return fingerChanges.sum();
+  }
+
+  @Override
+  public long getSuccessorFailovers() {
+    return successorFailovers.sum();
+  }
+
+  @Override
+  public long getPredecessorFailures() {
+    return predecessorFailures.sum();
+  }
+
+  @Override
+  public long getRoutingVersion() {
+    long version = 0;
+    for (ChordNode node : nodes) {
+      version += node.getRoutingVersion();
+    }
+    return version;
+  }
+
+  @Override
+  public long getStubCacheHits() {
+    return ChordRMIUtils.getStubCacheHits();
+  }
+
+  @Override
+  public long getStubCacheMisses() {
+    return ChordRMIUtils.getStubCacheMisses();
+  }
+
+  @Override
+  public long getStubCacheInvalidations() {
+    return ChordRMIUtils.getStubCacheInvalidations();
+  }
+
+  @Override
+  public int getStubCacheSize() {
+    return ChordRMIUtils.getStubCacheSize();
+  }
+
+  @Override
+  public int getPendingUpcalls() {
+    int pending = 0;
+    for (ChordNode node : nodes) {
+      pending += node.getUpcallDispatcher().getQueueDepth();
+    }
+    return pending;
+  }
+
+  @Override
+  public long getUpcallsDispatched() {
+    long dispatched = 0;
+    for (ChordNode node : nodes) {
+      dispatched += node.getUpcallDispatcher().getDispatched();
+    }
+    return dispatched;
+  }
+
+  @Override
+  public long getUpcallsCoalesced() {
+    long coalesced = 0;
+    for (ChordNode node : nodes) {
+      coalesced += node.getUpcallDispatcher().getCoalesced();
+    }
+    return coalesced;
+  }
+
+  @Override
+  public double getMaxUpcallHandlerMillis() {
+    double max = 0;
+    for (ChordNode node : nodes) {
+      max = Math.max(max, node.getUpcallDispatcher().getMaxHandlerMillis());
+    }
+    return max;
+  }
+}
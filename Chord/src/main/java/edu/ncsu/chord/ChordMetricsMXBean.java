@@ -0,0 +1,62 @@
+package edu.ncsu.chord;
+
+import java.util.Map;
+
+/**
+ * Routing metrics of all chord nodes in this JVM, exported over JMX as
+ * edu.ncsu.chord:type=ChordMetrics. Latencies are client side, i.e. include the network, and are
+ * keyed by ChordOperations method. Histograms have power of two buckets, so percentiles are upper
+ * bounds of the bucket they fall in.
+ */
+public interface ChordMetricsMXBean {
+
+  Map<String, Long> getRpcCalls();
+
+  Map<String, Long> getRpcFailures();
+
+  Map<String, Double> getRpcMeanLatencyMicros();
+
+  Map<String, Long> getRpc99thPercentileLatencyMicros();
+
+  long getLookups();
+
+  double getMeanLookupHops();
+
+  /* Bucket b counts lookups of [2^(b-1), 2^b) hops, bucket 0 those answered locally */
+  long[] getLookupHopHistogram();
+
+  /* Lookups that waited for the same lookup already in flight instead of routing themselves */
+  long getCoalescedLookups();
+
+  long getStabilizationRounds();
+
+  double getMeanStabilizationRoundMillis();
+
+  long get99thPercentileStabilizationRoundMillis();
+
+  long getStabilizationPeriodMillis();
+
+  long getFingerChanges();
+
+  long getSuccessorFailovers();
+
+  long getPredecessorFailures();
+
+  long getRoutingVersion();
+
+  long getStubCacheHits();
+
+  long getStubCacheMisses();
+
+  long getStubCacheInvalidations();
+
+  int getStubCacheSize();
+
+  int getPendingUpcalls();
+
+  long getUpcallsDispatched();
+
+  long getUpcallsCoalesced();
+
+  double getMaxUpcallHandlerMillis();
+}
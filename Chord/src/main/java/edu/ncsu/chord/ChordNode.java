@@ -3,6 +3,23 @@ package edu.ncsu.chord;
 import java.net.InetAddress;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import org.apache.log4j.Logger;
 
@@ -14,20 +31,18 @@ import com.google.gson.Gson;
  */
 class ChordNode implements ChordOperations {
 
-  /* ChordID of this node */
-  ChordID<InetAddress> selfChordID;
+  /* ChordID of this node. Changes only when the node is relocated on the ring */
+  volatile ChordID<InetAddress> selfChordID;
 
-  /* ChordID of the predecessor node */
-  ChordID<InetAddress> predecessorChordID = null;
+  /* Set once this node starts handing its keys over on leave. It then takes no new keys */
+  private volatile boolean leaving;
 
   /* IP address of this node */
   InetAddress selfIP;
 
-  /* Finger table of this node */
-  FingerTable fingerTable;
-
-  /* A successor list maintained by each node to stabilization protocol*/
-  ArrayList<ChordID<InetAddress>> successorList;
+  /* Predecessor, finger table and successor list of this node. Replaced as a whole, only while
+  holding the lock of this node, and read without any lock */
+  private volatile RoutingState routingState;
 
   /* Number of entries to keep in successor list */
   private static final int SUCCESSOR_LIST_MAX_SIZE = ChordConfig.SUCCESSOR_LIST_MAX_SIZE;
@@ -36,15 +51,68 @@ class ChordNode implements ChordOperations {
   private final transient static Logger logger = Logger.getLogger(ChordNode.class);
   private final transient static Logger analysisLogger = Logger.getLogger("analysis");
   
-  /* UpCallHandler for all events that upper layers needs to be notified about */
-  UpcallEventHandler upcallHandler;
+  /* Delivers all events that upper layers needs to be notified about to their UpCallHandler */
+  private transient final UpcallDispatcher upcallDispatcher;
+
+  /* Bounded pool shared by all nodes of this JVM to lookup finger table entries concurrently */
+  private static volatile ExecutorService fingerFixer =
+      Executors.newFixedThreadPool(ChordConfig.FINGER_FIX_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "finger-fixer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /* Suspicion levels of peers, fed by the outcome of every call to or from them. Shared by all nodes
+  of this JVM since virtual nodes of a machine live or die together */
+  private static final PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector();
+
+  /* Source of round trip times in nanoseconds, shared by all nodes of this JVM */
+  private static volatile LongSupplier rttClock = System::nanoTime;
+
+  /* Round trip times of peers, used to pick low latency fingers */
+  private transient PeerLatencyTracker latencyTracker =
+      new PeerLatencyTracker(ChordConfig.PEER_RTT_MAX_AGE, TimeUnit.SECONDS,
+                             () -> rttClock.getAsLong());
+
+  /* Finger index from which next incremental finger refresh round continues */
+  private transient int nextFingerToFix = 1;
+
+  /* Finger refresh metrics of the last round */
+  private transient volatile long lastFixFingersMillis;
+  private transient volatile int lastStaleFingers;
+
+  /* Incremented whenever predecessor, successor, successor list or a finger changes. Lets the
+  stabilization scheduler find out whether the last round changed anything */
+  private transient final AtomicLong routingVersion = new AtomicLong();
+
+  /* Called after every routing state change, used to bring stabilization back to fast rounds */
+  private transient volatile Runnable routingChangeListener;
+
+  /* Routing version last dumped by printNode, -1 so that the first call always prints */
+  private transient long lastPrintedVersion = -1;
+
+  /* Full ring membership used by LookupMode.ONE_HOP. Kept in every mode since it costs nothing
+  unless gossiped */
+  private transient volatile MembershipTable membership;
+
+  /* Stabilization rounds since the membership table was last exchanged as a whole */
+  private transient volatile int roundsSinceFullSync;
 
   ChordNode(InetAddress selfIP) {
+    this(selfIP, 0);
+  }
+
+  ChordNode(InetAddress selfIP, int virtualIndex) {
+    this(selfIP, virtualIndex, new UpcallDispatcher());
+  }
+
+  ChordNode(InetAddress selfIP, int virtualIndex, UpcallDispatcher upcallDispatcher) {
     this.selfIP = selfIP;
-    selfChordID = new ChordID<InetAddress>(selfIP);
-    fingerTable = new FingerTable(selfChordID);
-    predecessorChordID = selfChordID;
-    successorList = new ArrayList<ChordID<InetAddress>>();
+    this.upcallDispatcher = upcallDispatcher;
+    selfChordID = new ChordID<InetAddress>(selfIP, virtualIndex);
+    membership = new MembershipTable(selfChordID);
+    routingState = new RoutingState(selfChordID, new FingerTable(selfChordID),
+                                    Collections.<ChordID<InetAddress>>emptyList());
   }
 
   public String toString() {
@@ -52,51 +120,125 @@ class ChordNode implements ChordOperations {
   }
 
   public void setUpcallHandler(UpcallEventHandler upcallHandler) {
-    this.upcallHandler = upcallHandler;
+    upcallDispatcher.setHandler(upcallHandler);
+  }
+
+  UpcallDispatcher getUpcallDispatcher() {
+    return upcallDispatcher;
   }
 
-  private void setPredecessorChordID(Event updateEvent, ChordID<InetAddress> chordID) {
-    ChordID<InetAddress> prevPredecessor = this.predecessorChordID;
+  RoutingState getRoutingState() {
+    return routingState;
+  }
+
+  void setRoutingChangeListener(Runnable routingChangeListener) {
+    this.routingChangeListener = routingChangeListener;
+  }
+
+  long getRoutingVersion() {
+    return routingVersion.get();
+  }
+
+  private void markRoutingChanged() {
+    routingVersion.incrementAndGet();
+    Runnable listener = routingChangeListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Replaces predecessor with chordID, but only if predecessor is still expectedPredecessor. A
+   * concurrent notify may have changed it since the caller looked at it, that newer value is kept.
+   */
+  private boolean setPredecessorChordID(Event updateEvent, ChordID<InetAddress> expectedPredecessor,
+                                        ChordID<InetAddress> chordID) {
     synchronized (this) {
-      this.predecessorChordID = chordID;
+      if (!routingState.predecessor.equals(expectedPredecessor)) {
+        return false;
+      }
+      routingState = routingState.withPredecessor(chordID);
+    }
+    if (!chordID.equals(expectedPredecessor)) {
+      markRoutingChanged();
     }
-    if (upcallHandler != null)
-      upcallHandler.handleEvent(updateEvent, prevPredecessor, chordID);
+    upcallDispatcher.submit(selfChordID, updateEvent, expectedPredecessor, chordID);
+    return true;
   }
 
   private void setSuccessor(Event updateEvent, ChordID<InetAddress> successorChordID) {
-    logger.debug("[Entry] Method:  setSuccessor " + "@" + selfChordID +
-		 " Caller: " + selfChordID + "Parameters: " + successorChordID);
-
-    ChordID<InetAddress> prevSuccessor = fingerTable.getEntry(0).responsibleNodeID;
+    ChordID<InetAddress> prevSuccessor;
     synchronized (this) {
-      fingerTable.getEntry(0).responsibleNodeID = successorChordID;
+      prevSuccessor = routingState.getSuccessor();
+      routingState = routingState.withSuccessor(successorChordID);
     }
-    upcallHandler.handleEvent(updateEvent, prevSuccessor, successorChordID);
-
-    logger.debug("[Exit] Method:  setSuccessor " + "@" + selfChordID +
-                 " Caller: " + selfChordID + "Parameters: " + successorChordID);
+    if (!successorChordID.equals(prevSuccessor)) {
+      markRoutingChanged();
+    }
+    upcallDispatcher.submit(selfChordID, updateEvent, prevSuccessor, successorChordID);
   }
 
   @Override
   public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID) throws RemoteException {
-    logger.debug("[Entry] Method:  getSuccessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: ");
-    logger.debug("[Exit] Method:  getSuccessor " + "@" + selfChordID +
-                 " Caller: " + callerID + "Parameters: ");
-    return fingerTable.getEntry(0).responsibleNodeID;
+    heardFrom(callerID);
+    return routingState.getSuccessor();
   }
 
   @Override
   public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID, Hash id)
       throws RemoteException {
-    logger.debug("[Entry] Method:  getSuccessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + id);
+    heardFrom(callerID);
+    ChordID<InetAddress> successorID = findSuccessorIteratively(id).getNodeID();
 
+    return successorID;
+  }
+
+  /**
+   * Finds successor of id using the routing mode selected by ChordConfig.LOOKUP_MODE. The returned
+   * result also tells how many hops the lookup took.
+   */
+  LookupResult lookup(Hash id) throws RemoteException {
+    LookupResult result = null;
+    if (ChordConfig.LOOKUP_MODE == LookupMode.ONE_HOP) {
+      ChordID<InetAddress> owner = membership.getOwner(id);
+      if (owner != null && isAvailable(owner)) {
+        result = new LookupResult(owner, 0);
+      }
+    }
+    return result == null ? route(id) : recordLookup(id, result);
+  }
+
+  /**
+   * Finds successor of id by routing through the ring even in LookupMode.ONE_HOP, e.g. because
+   * the owner taken from the membership table turned out to be wrong.
+   */
+  LookupResult route(Hash id) throws RemoteException {
+    LookupResult result;
+    if (ChordConfig.LOOKUP_MODE == LookupMode.RECURSIVE) {
+      result = findSuccessor(selfChordID, id, 0);
+    } else {
+      result = findSuccessorIteratively(id);
+    }
+    return recordLookup(id, result);
+  }
+
+  private LookupResult recordLookup(Hash id, LookupResult result) {
+    if (result != null) {
+      ChordMetrics.recordLookup(result.getHops());
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Lookup for " + id + " returned " + result);
+    }
+    return result;
+  }
+
+  /* Iterative lookup: this node itself asks every node on the path for the next hop */
+  private LookupResult findSuccessorIteratively(Hash id) {
     ChordID<InetAddress> successorID = null;
-    ChordID<InetAddress> predecessorID = getPredecessor(selfChordID, id);
-    logger.debug("Predecessor of " + id + " is found to be " + predecessorID);
-    ChordOperations predecessorROR = ChordRMIUtils.getRemoteNodeObject(predecessorID.getKey());
+    LookupResult predecessor = findPredecessor(id);
+    ChordID<InetAddress> predecessorID = predecessor.getNodeID();
+    ChordOperations predecessorROR =
+        predecessorID == null ? null : ChordRMIUtils.getRemoteNodeObject(predecessorID);
     if (predecessorROR == null) {
       logger.error("Unable to get RMI object for " + predecessorID);
     } else {
@@ -104,75 +246,231 @@ class ChordNode implements ChordOperations {
         successorID = predecessorROR.getSuccessor(selfChordID);
       } catch (Exception e) {
         e.printStackTrace();
+        ChordRMIUtils.invalidateRemoteNodeObject(predecessorID);
         successorID = null;
       }
     }
-    logger.debug("Successor ID for " + id + " is found to be " + successorID);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Successor ID for " + id + " is found to be " + successorID);
+    }
+    return new LookupResult(successorID, predecessor.getHops(), predecessorID);
+  }
 
-    logger.debug("[Exit] Method:  getSuccessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + id);
-    return successorID;
+  @Override
+  public LookupResult findSuccessor(ChordID<InetAddress> callerID, Hash id, int hops)
+      throws RemoteException {
+    ChordID<InetAddress> successor = getSuccessor(selfChordID);
+    /* Answer the query if id lies between this node and its successor */
+    if (id.inRange(selfChordID, successor, false, true)) {
+      return new LookupResult(successor, hops, selfChordID);
+    }
+    if (hops >= ChordConfig.MAX_LOOKUP_HOPS) {
+      logger.error("Lookup for " + id + " given up after " + hops + " hops");
+      return null;
+    }
+    /* If no live node is closer to id than this node the successor is suspected, and so is any
+    answer forwarding could give. The iterative lookup fails cleanly then */
+    ChordID<InetAddress> nextHop = getClosestPrecedingFinger(selfChordID, id);
+    if (nextHop.equals(selfChordID)) {
+      return finishIteratively(id, hops);
+    }
+    ChordOperations nextHopROR = ChordRMIUtils.getRemoteNodeObject(nextHop);
+    if (nextHopROR == null) {
+      logger.error("Unable to get RMI object for " + nextHop);
+      return finishIteratively(id, hops);
+    }
+    try {
+      LookupResult result = nextHopROR.findSuccessor(callerID, id, hops + 1);
+      return result != null ? result : finishIteratively(id, hops);
+    } catch (RemoteException e) {
+      e.printStackTrace();
+      ChordRMIUtils.invalidateRemoteNodeObject(nextHop);
+      return finishIteratively(id, hops);
+    }
+  }
+
+  /* Continues a recursive lookup that could not be forwarded with an iterative one from here */
+  private LookupResult finishIteratively(Hash id, int hops) {
+    LookupResult result = findSuccessorIteratively(id);
+    if (result.getNodeID() == null) {
+      return null;
+    }
+    return new LookupResult(result.getNodeID(), hops + result.getHops(), result.getPredecessorID());
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getSuccessors(ChordID<InetAddress> callerID, List<Hash> ids,
+                                                  int hops) throws RemoteException {
+    List<ChordID<InetAddress>> successors = new ArrayList<>(Collections.nCopies(ids.size(), null));
+    ChordID<InetAddress> successor = getSuccessor(selfChordID);
+
+    /* Positions of ids that have to be forwarded, grouped by the finger they go to */
+    Map<ChordID<InetAddress>, List<Integer>> forwards = new LinkedHashMap<>();
+    for (int i = 0; i < ids.size(); i++) {
+      Hash id = ids.get(i);
+      ChordID<InetAddress> nextHop = getClosestPrecedingFinger(selfChordID, id);
+      if (id.inRange(selfChordID, successor, false, true) || nextHop.equals(selfChordID)) {
+        successors.set(i, successor);
+      } else {
+        forwards.computeIfAbsent(nextHop, k -> new ArrayList<>()).add(i);
+      }
+    }
+    if (!forwards.isEmpty() && hops >= ChordConfig.MAX_LOOKUP_HOPS) {
+      logger.error("Batched lookup given up after " + hops + " hops");
+      return successors;
+    }
+
+    for (Map.Entry<ChordID<InetAddress>, List<Integer>> forward : forwards.entrySet()) {
+      ChordID<InetAddress> nextHop = forward.getKey();
+      List<Integer> positions = forward.getValue();
+      List<Hash> subBatch = new ArrayList<>(positions.size());
+      for (int position : positions) {
+        subBatch.add(ids.get(position));
+      }
+      ChordOperations nextHopROR = ChordRMIUtils.getRemoteNodeObject(nextHop);
+      if (nextHopROR == null) {
+        logger.error("Unable to get RMI object for " + nextHop);
+      } else {
+        try {
+          List<ChordID<InetAddress>> subResult =
+              nextHopROR.getSuccessors(callerID, subBatch, hops + 1);
+          for (int j = 0; j < positions.size(); j++) {
+            successors.set(positions.get(j), subResult.get(j));
+          }
+        } catch (RemoteException e) {
+          e.printStackTrace();
+          ChordRMIUtils.invalidateRemoteNodeObject(nextHop);
+        }
+      }
+      /* Ids the finger could not resolve are finished iteratively from here, as in findSuccessor */
+      for (int position : positions) {
+        if (successors.get(position) == null) {
+          LookupResult result = finishIteratively(ids.get(position), hops);
+          successors.set(position, result == null ? null : result.getNodeID());
+        }
+      }
+    }
+
+    return successors;
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getSuccessorList(ChordID<InetAddress> callerID)
+      throws RemoteException {
+    heardFrom(callerID);
+    return new ArrayList<>(routingState.successorList);
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getFingerNodes(ChordID<InetAddress> callerID)
+      throws RemoteException {
+    heardFrom(callerID);
+    FingerTable fingerTable = routingState.fingerTable;
+    Set<ChordID<InetAddress>> fingerNodes = new LinkedHashSet<>();
+    for (int i = 0; i < FingerTable.MAX_SIZE; i++) {
+      fingerNodes.add(fingerTable.getEntry(i).responsibleNodeID);
+    }
+    return new ArrayList<>(fingerNodes);
   }
 
   @Override
   public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID) throws RemoteException {
-    logger.debug("[Entry] Method:  getPredecessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: ");
-    logger.debug("[Exit] Method:  getPredecessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: ");
-    return predecessorChordID;
+    heardFrom(callerID);
+    return routingState.predecessor;
   }
 
   @Override
   public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID, Hash id)
       throws RemoteException {
-    logger.debug("[Entry] Method:  getPredecessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + id);
+    ChordID<InetAddress> predecessor = findPredecessor(id).getNodeID();
+
+    return predecessor;
+  }
 
+  /* Walks the ring through closest preceding fingers until it finds the node just before id */
+  private LookupResult findPredecessor(Hash id) {
     ChordID<InetAddress> predecessor = selfChordID;
-    ChordOperations predecessorROR = ChordRMIUtils.getRemoteNodeObject(selfChordID.getKey());
+    ChordOperations predecessorROR = ChordRMIUtils.getRemoteNodeObject(selfChordID);
+    int hops = 0;
     try {
       while (!id.inRange(predecessor, predecessorROR.getSuccessor(selfChordID), false, true)) {
-        predecessor = predecessorROR.getClosestPrecedingFinger(selfChordID, id);
-        predecessorROR = ChordRMIUtils.getRemoteNodeObject(predecessor.getKey());
+        if (hops >= ChordConfig.MAX_LOOKUP_HOPS) {
+          logger.error("Lookup for " + id + " given up after " + hops + " hops");
+          predecessor = null;
+          break;
+        }
+        long callStart = rttClock.getAsLong();
+        ChordID<InetAddress> nextHop = predecessorROR.getClosestPrecedingFinger(selfChordID, id);
+        recordRtt(predecessor, callStart);
+        if (nextHop.equals(predecessor)) {
+          /* Every node that would get closer to id is suspected, asking again would not help */
+          logger.error("Lookup for " + id + " makes no progress at " + predecessor);
+          predecessor = null;
+          break;
+        }
+        predecessor = nextHop;
+        hops++;
+        predecessorROR = ChordRMIUtils.getRemoteNodeObject(predecessor);
         if (predecessorROR == null) {
           logger.error("Unable to get RMI object for " + predecessor);
           predecessor = null;
+          break;
         }
       }
     } catch (RemoteException e) {
       e.printStackTrace();
+      ChordRMIUtils.invalidateRemoteNodeObject(predecessor);
       predecessor = null;
     }
 
-    logger.debug("Predecessor found is: " + predecessor);
-
-    logger.debug("[Exit] Method:  getPredecessor " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + id);
-    return predecessor;
+    return new LookupResult(predecessor, hops);
   }
 
 
   @Override
   public ChordID<InetAddress> getClosestPrecedingFinger(ChordID<InetAddress> callerID, Hash id)
       throws RemoteException {
-    logger.debug("[Entry] Method:  getClosestPrecedingFinger " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + id);
-
+    heardFrom(callerID);
     ChordID<InetAddress> closestPrecedingFinger = selfChordID;
 
+    /* With wide IDs most consecutive fingers point to the same node, check each node only once */
+    ChordID<InetAddress> previousChecked = null;
+    FingerTable fingerTable = routingState.fingerTable;
     for (int i = FingerTable.MAX_SIZE - 1; i >= 0; i--) {
       FingerTableEntry ftEntry = fingerTable.getEntry(i);
-      if (ftEntry.responsibleNodeID.inRange(selfChordID, id, false, false)) {
-	closestPrecedingFinger = ftEntry.responsibleNodeID;
+      /* Prefer the low latency node of this finger's range, as long as it still precedes id */
+      ChordID<InetAddress> finger = ftEntry.proximityNodeID;
+      if (finger == null || !finger.inRange(selfChordID, id, false, false)) {
+        finger = ftEntry.responsibleNodeID;
+      }
+      if (finger == previousChecked) {
+        continue;
+      }
+      previousChecked = finger;
+      /* Route around peers the failure detector suspects instead of timing out on them */
+      if (!finger.equals(selfChordID) && !failureDetector.isAvailable(finger.getKey())) {
+        continue;
+      }
+      if (finger.inRange(selfChordID, id, false, false)) {
+	closestPrecedingFinger = finger;
 	break;
       }
     }
 
-    logger.debug("Closest Preceding finger is " + closestPrecedingFinger);
+    if (closestPrecedingFinger.equals(selfChordID)) {
+      /* All fingers before id are suspected, e.g. the successor has just failed. The successor
+      list still leads around the ring, take its furthest live entry that precedes id */
+      List<ChordID<InetAddress>> successors = routingState.successorList;
+      for (int i = successors.size() - 1; i >= 0; i--) {
+        ChordID<InetAddress> successor = successors.get(i);
+        if (successor.inRange(selfChordID, id, false, false)
+            && failureDetector.isAvailable(successor.getKey())) {
+          closestPrecedingFinger = successor;
+          break;
+        }
+      }
+    }
 
-    logger.debug("[Exit] Method:  getClosestPrecedingFinger " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + id);
     return closestPrecedingFinger;
   }
 
@@ -181,64 +479,330 @@ class ChordNode implements ChordOperations {
    * A newly joining node 'n' needs an ID of any existing chord node say 'm'. 'n' calls
    * getSuccessor() method on that node 'm' with lookup id as 'n' to find successor of 'n'. This
    * method will setup the successor node for 'n'.
+   *
+   * The finger table and successor list are then seeded from the ones of the successor, so that
+   * lookups through 'n' take the usual number of hops right away. Stabilization corrects them
+   * from there on.
    */
   boolean join(ArrayList<InetAddress> bootstrapNodes) throws RemoteException {
-    logger.debug("[Entry] Method:  join " + "@" + selfChordID +
-		 " Caller: " + "Parameters: " + bootstrapNodes);
     analysisLogger.info("%JOIN%"+selfChordID.getKey()+"%"+selfChordID.getValue());
-    boolean result = true;
-    ChordOperations bootstrapNodeROR = null;
-
-     /* Get RMI reference of bootstrap node */
-      for (int i = 0; i < bootstrapNodes.size() && bootstrapNodeROR == null; i++) {
-        bootstrapNodeROR = ChordRMIUtils.getRemoteNodeObject(bootstrapNodes.get(i));
-        if (bootstrapNodeROR == null) {
-          logger.error("Unable to get RMI object for " + bootstrapNodes.get(i));
+    ChordOperations bootstrapNodeROR = probeBootstrapNodes(bootstrapNodes);
+    if (bootstrapNodeROR == null) {
+      logger.error("Could not join the network. Exiting.");
+      return false;
+    }
+
+    /* Look up the ID just after our own, so that an entry left for this node by an earlier run is
+    not taken for the successor */
+    ChordID<InetAddress> successor = bootstrapNodeROR.getSuccessor(selfChordID, selfChordID.next(0));
+    if (successor == null) {
+      logger.error("Bootstrap node could not find successor of " + selfChordID);
+      return false;
+    }
+    if (successor.equals(selfChordID)) {
+      /* First node of the ring */
+      setSuccessor(Event.NEW_SUCCESSOR, successor);
+      return true;
+    }
+    joinBefore(successor);
+    return true;
+  }
+
+  /* Second half of join, once the successor has been looked up */
+  private void joinBefore(ChordID<InetAddress> successor) {
+    /* Nodes that joined since the lookup path last stabilized are not known to it yet, but they
+    have already told the successor */
+    successor = walkBackToSuccessor(successor, ChordRMIUtils.getRemoteNodeObject(successor));
+    setSuccessor(Event.NEW_SUCCESSOR, successor);
+    ChordOperations successorROR = ChordRMIUtils.getRemoteNodeObject(successor);
+    if (successorROR == null) {
+      logger.error("Unable to get RMI object for " + successor + ", fingers are left to stabilization");
+      return;
+    }
+    try {
+      copyRoutingState(successor, successorROR.getSuccessorList(selfChordID),
+                       successorROR.getFingerNodes(selfChordID));
+      /* Tell successor right away, so that it hands keys over without waiting for stabilization */
+      successorROR.notify(selfChordID, selfChordID);
+      if (ChordConfig.LOOKUP_MODE == LookupMode.ONE_HOP) {
+        exchangeMembershipWith(successor, true);
+      }
+    } catch (RemoteException e) {
+      logger.error("Unable to copy routing state of " + successor + ": " + e);
+      ChordRMIUtils.invalidateRemoteNodeObject(successor);
+    }
+  }
+
+  /**
+   * Probes all bootstrap nodes at once and returns the first one that answers, so that seeds that
+   * are down do not cost a timeout each. Probes run on threads of their own, one per seed, and
+   * those still running are cancelled once a seed has answered.
+   */
+  private ChordOperations probeBootstrapNodes(List<InetAddress> bootstrapNodes) {
+    if (bootstrapNodes.size() <= 1) {
+      try {
+        return bootstrapNodes.isEmpty() ? null : probeBootstrapNode(bootstrapNodes.get(0));
+      } catch (RemoteException e) {
+        logger.error("Bootstrap node did not answer: " + e);
+        return null;
+      }
+    }
+    ExecutorService probeThreads = Executors.newFixedThreadPool(bootstrapNodes.size(), runnable -> {
+      Thread thread = new Thread(runnable, "bootstrap-probe");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      ExecutorCompletionService<ChordOperations> probes =
+          new ExecutorCompletionService<>(probeThreads);
+      for (InetAddress ip : bootstrapNodes) {
+        probes.submit(() -> probeBootstrapNode(ip));
+      }
+      for (int i = 0; i < bootstrapNodes.size(); i++) {
+        try {
+          ChordOperations bootstrapNodeROR = probes.take().get();
+          if (bootstrapNodeROR != null) {
+            return bootstrapNodeROR;
+          }
+        } catch (ExecutionException e) {
+          logger.error("Bootstrap node did not answer: " + e.getCause());
         }
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      probeThreads.shutdownNow();
+    }
+    return null;
+  }
 
-      if (bootstrapNodeROR == null) {
-        logger.error("Could not join the network. Exiting.");
-        result = false;
-      } else {
-        /* Joining the network for first time. Get successor ID from bootstrap node */
-        setSuccessor(Event.NEW_SUCCESSOR, bootstrapNodeROR.getSuccessor(selfChordID));
+  /* Returns the stub of bootstrap node ip if it answers a call, null if no stub could be made */
+  private ChordOperations probeBootstrapNode(InetAddress ip) throws RemoteException {
+    ChordOperations bootstrapNodeROR = ChordRMIUtils.getRemoteNodeObject(ip);
+    if (bootstrapNodeROR == null) {
+      logger.error("Unable to get RMI object for " + ip);
+      return null;
+    }
+    bootstrapNodeROR.getSuccessor(selfChordID);
+    return bootstrapNodeROR;
+  }
+
+  /**
+   * Seeds successor list and fingers from the successor's. Each finger is set to the first node at
+   * or after its range start among the nodes the successor knows. That is the right node unless
+   * the successor does not know it, and even then a node further on is still correct to route to.
+   */
+  private void copyRoutingState(ChordID<InetAddress> successor,
+                                List<ChordID<InetAddress>> successorsList,
+                                List<ChordID<InetAddress>> fingerNodes) {
+    List<ChordID<InetAddress>> newList = new ArrayList<>();
+    newList.add(successor);
+    for (ChordID<InetAddress> entry : successorsList) {
+      if (newList.size() >= SUCCESSOR_LIST_MAX_SIZE || entry.equals(selfChordID)) {
+        break;
+      }
+      newList.add(entry);
+    }
+
+    TreeMap<Hash, ChordID<InetAddress>> knownNodes = new TreeMap<>();
+    for (ChordID<InetAddress> node : newList) {
+      knownNodes.put(node, node);
+    }
+    for (ChordID<InetAddress> node : fingerNodes) {
+      knownNodes.put(node, node);
+    }
+    knownNodes.remove(selfChordID);
+
+    int copiedFingers = 0;
+    synchronized (this) {
+      List<FingerTableEntry> entries = routingState.fingerTable.copyEntries();
+      for (int i = 1; i < FingerTable.MAX_SIZE; i++) {
+        FingerTableEntry entry = entries.get(i);
+        ChordID<InetAddress> node;
+        if (entry.hashRangeStart.inRange(selfChordID, successor, true, false)) {
+          node = successor;
+        } else {
+          Map.Entry<Hash, ChordID<InetAddress>> ceiling = knownNodes.ceilingEntry(entry.hashRangeStart);
+          node = ceiling != null ? ceiling.getValue() : knownNodes.firstEntry().getValue();
+        }
+        if (!node.equals(entry.responsibleNodeID)) {
+          entries.set(i, entry.withResponsibleNodeID(node));
+          copiedFingers++;
+        }
       }
+      routingState = routingState.withFingerTable(new FingerTable(entries)).withSuccessorList(newList);
+    }
+    ChordMetrics.recordFingerChanges(copiedFingers);
+    markRoutingChanged();
+    logger.info("Copied " + knownNodes.size() + " nodes from " + successor + " into "
+                + copiedFingers + " fingers");
+  }
+
+  /**
+   * Leaves the ring gracefully. Keys of this node are first handed over through the upcall handler
+   * to the node that takes them over, then predecessor and successor are told to splice this node
+   * out. Returns once both have acknowledged, so that no neighbour ever has to time out on this
+   * node. Stabilization of this node must already be stopped.
+   *
+   * @return false if the handoff failed or a neighbour could not be told. The node has not left
+   * cleanly then and neighbours will find out through failure detection.
+   */
+  boolean leave() {
+    analysisLogger.info("%LEAVE%" + selfChordID.getKey() + "%" + selfChordID.getValue());
+    RoutingState state = routingState;
+    ChordID<InetAddress> predecessor = state.predecessor;
+    ChordID<InetAddress> successor = state.getSuccessor();
+    if (successor.equals(selfChordID)) {
+      /* Only node of the ring, nobody to tell */
+      return true;
+    }
 
-    logger.debug("[Exit] Method:  join " + "@" + selfChordID +
-		 " Caller: " + "Parameters: " + bootstrapNodes);
+    if (!handOffKeys(predecessor)) {
+      return false;
+    }
+    boolean result = spliceOut(predecessor, successor);
+    logger.info("Node " + selfChordID + " left the ring");
+    return result;
+  }
+
+  /**
+   * Hands the keys of this node, those after predecessor, over through the upcall handler to the
+   * node that takes them over on leave. From then on the node takes no new keys.
+   *
+   * @return false if the handoff failed, the node then takes keys again
+   */
+  private boolean handOffKeys(ChordID<InetAddress> predecessor) {
+    /* Keys written from now on would not be handed over */
+    leaving = true;
+    if (!upcallDispatcher.handOff(selfChordID, predecessor, getReplicationSuccessor())) {
+      logger.error("Unable to hand keys of " + selfChordID + " over, not leaving");
+      leaving = false;
+      return false;
+    }
+    return true;
+  }
 
+  /* Tells successor and predecessor to splice this node out. Returns false if one could not be told */
+  private boolean spliceOut(ChordID<InetAddress> predecessor, ChordID<InetAddress> successor) {
+    boolean result = tellLeave(successor, predecessor, successor);
+    if (!predecessor.equals(selfChordID) && !predecessor.equals(successor)) {
+      result &= tellLeave(predecessor, predecessor, successor);
+    }
     return result;
   }
 
+  /**
+   * Moves this node to position on the ring, e.g. to take over part of the keys of an overloaded
+   * node. The node hands its keys over as in leave() and joins again under an ID of position
+   * before the successor of position, which then hands over the keys that now belong to it.
+   * Virtual index and address stay the same, so the node is still reached under the same binding.
+   * Handoff and join, which may move many keys, run on the calling thread while stabilization goes
+   * on. Only splicing the node out and swapping its ID run between two rounds of stabilizer, if
+   * given, as a round on the old ID would announce it to its neighbours again.
+   *
+   * @return false if the keys could not be handed over, the node is then still at its old position
+   */
+  boolean relocate(SHA256Hash position, StabilizationScheduler stabilizer)
+      throws InterruptedException, ExecutionException {
+    ChordID<InetAddress> previousID = selfChordID;
+    RoutingState state = routingState;
+    ChordID<InetAddress> successor = state.getSuccessor();
+    if (successor.equals(previousID) || previousID.compareTo(position) == 0) {
+      return false;
+    }
+    /* Look the new successor up while this node still routes correctly. Between leave and join,
+    calls that reach it through stale references to its old ID get no useful answer */
+    ChordID<InetAddress> newSuccessor = findSuccessorIteratively(position).getNodeID();
+    if (newSuccessor == null) {
+      logger.error("Unable to find successor of " + position + ", not relocating");
+      return false;
+    }
+    if (newSuccessor.equals(previousID)) {
+      /* Moving within own range, which the current successor takes over on leave */
+      newSuccessor = successor;
+    }
+    if (!handOffKeys(state.predecessor)) {
+      return false;
+    }
+
+    ChordID<InetAddress> newID = new ChordID<>(selfIP, previousID.getVirtualIndex(),
+                                               position.getHighWord(), position.getMidWord(),
+                                               position.getLowWord(), position.getBits());
+    if (stabilizer == null) {
+      moveTo(newID);
+    } else {
+      stabilizer.runBetweenRounds(() -> {
+        moveTo(newID);
+        return null;
+      });
+    }
+    joinBefore(newSuccessor);
+    return true;
+  }
+
+  /* Splices this node out of the ring and gives it newID and the routing state of a node that is
+  about to join. Neighbours that could not be told find out through failure detection */
+  private void moveTo(ChordID<InetAddress> newID) {
+    ChordID<InetAddress> previousID = selfChordID;
+    RoutingState state = routingState;
+    spliceOut(state.predecessor, state.getSuccessor());
+    MembershipTable table = new MembershipTable(newID);
+    table.applyAll(membership.getAll());
+    table.markDown(previousID);
+    synchronized (this) {
+      selfChordID = newID;
+      routingState = new RoutingState(newID, new FingerTable(newID),
+                                      Collections.<ChordID<InetAddress>>emptyList());
+      membership = table;
+      nextFingerToFix = 1;
+      leaving = false;
+    }
+    markRoutingChanged();
+    logger.info("Node " + previousID + " relocated to " + newID);
+  }
+
+  private boolean tellLeave(ChordID<InetAddress> neighbour, ChordID<InetAddress> predecessor,
+                            ChordID<InetAddress> successor) {
+    ChordOperations neighbourROR = ChordRMIUtils.getRemoteNodeObject(neighbour);
+    if (neighbourROR == null) {
+      logger.error("Unable to get RMI object for " + neighbour + " to tell it about leave");
+      return false;
+    }
+    try {
+      neighbourROR.notifyLeave(selfChordID, selfChordID, predecessor, successor);
+      return true;
+    } catch (RemoteException e) {
+      logger.error("Unable to tell " + neighbour + " about leave: " + e);
+      ChordRMIUtils.invalidateRemoteNodeObject(neighbour);
+      return false;
+    }
+  }
+
   /**
    * This method will check with current successor to see if predecesor of current successor is same
    * as its own ID. If not it means new node has joined. Then change your successor to this new node
    * and ask the new node to set its own predecessor as your ID.
    */
   void stabilize() throws RemoteException {
-    logger.debug("[Entry] Method:  stabilize " + "@" + selfChordID +
-		 " Caller: " + "Parameters: ");
-
     ChordID<InetAddress> successorChordID = getSuccessor(selfChordID);
       /* Periodically check predecessor of current successor. This will tell if a new node has
       joined in between */
-    ChordOperations successorROR = ChordRMIUtils.getRemoteNodeObject(successorChordID.getKey());
+    ChordOperations successorROR = null;
+    if (!failureDetector.shouldContact(successorChordID.getKey())) {
+      logger.error("Successor " + successorChordID + " is suspected to have failed");
+    } else {
+      successorROR = ChordRMIUtils.getRemoteNodeObject(successorChordID);
+    }
     if (successorROR == null) {
       logger.error("Unable to get RMI object for " + successorChordID
 		   + " will try again in next interval");
     } else {
-      try {
-        ChordID<InetAddress> predecessorOfSuccessor = successorROR.getPredecessor(selfChordID);
-        logger.debug("Predecessor found from successor is " + predecessorOfSuccessor);
-        if (predecessorOfSuccessor.inRange(selfChordID, successorChordID, false, false)) {
-          setSuccessor(Event.NEW_SUCCESSOR, predecessorOfSuccessor);
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
+      ChordID<InetAddress> newSuccessor = walkBackToSuccessor(successorChordID, successorROR);
+      if (!newSuccessor.equals(successorChordID)) {
+        setSuccessor(Event.NEW_SUCCESSOR, newSuccessor);
       }
 
-      successorROR = ChordRMIUtils.getRemoteNodeObject(getSuccessor(selfChordID).getKey());
+      successorROR = ChordRMIUtils.getRemoteNodeObject(getSuccessor(selfChordID));
       if (successorROR == null) {
 	logger.error("Unable to notify " + getSuccessor(selfChordID)
 		     + " will try again in next interval");
@@ -249,72 +813,203 @@ class ChordNode implements ChordOperations {
           logger.error("Unable to notify " + getSuccessor(selfChordID)
                        + " will try again in next interval");
           e.printStackTrace();
+          ChordRMIUtils.invalidateRemoteNodeObject(getSuccessor(selfChordID));
         }
       }
     }
 
-    logger.debug("[Exit] Method:  stabilize " + "@" + selfChordID +
-		 " Caller: " + "Parameters: ");
+    if (ChordConfig.LOOKUP_MODE == LookupMode.ONE_HOP) {
+      gossipMembership();
+    }
+  }
+
+  /**
+   * Passes membership changes on to the successor and to one random member, and takes theirs in
+   * return. Every ChordConfig.MEMBERSHIP_FULL_SYNC_ROUNDS rounds the successor gets the whole
+   * table instead.
+   */
+  private void gossipMembership() {
+    ChordID<InetAddress> successor = routingState.getSuccessor();
+    boolean fullSync = ++roundsSinceFullSync >= ChordConfig.MEMBERSHIP_FULL_SYNC_ROUNDS;
+    if (fullSync) {
+      roundsSinceFullSync = 0;
+    }
+    if (!successor.equals(selfChordID)) {
+      exchangeMembershipWith(successor, fullSync);
+    }
+    ChordID<InetAddress> member = membership.getRandomMember();
+    if (member != null && !member.equals(selfChordID) && !member.equals(successor)
+        && failureDetector.shouldContact(member.getKey())) {
+      exchangeMembershipWith(member, false);
+    }
+  }
+
+  private void exchangeMembershipWith(ChordID<InetAddress> nodeID, boolean fullTable) {
+    ChordOperations nodeROR = ChordRMIUtils.getRemoteNodeObject(nodeID);
+    if (nodeROR == null) {
+      logger.error("Unable to get RMI object for " + nodeID + " to exchange membership");
+      return;
+    }
+    try {
+      List<MembershipUpdate> updates = fullTable ? membership.getAll() : membership.takeRumors();
+      if (membership.applyAll(nodeROR.exchangeMembership(selfChordID, updates, fullTable))) {
+        markRoutingChanged();
+      }
+    } catch (RemoteException e) {
+      logger.error("Unable to exchange membership with " + nodeID + ": " + e);
+      ChordRMIUtils.invalidateRemoteNodeObject(nodeID);
+    }
+  }
+
+  /**
+   * Corrects the membership table after the owner it picked for a key turned out to be wrong.
+   * pickedOwner is marked down if it could not be reached and the failure detector suspects it as
+   * well, since a mark spreads to the whole ring by gossip and one failed call may be a passing
+   * error. owner found by routing is added if missing, and the next gossip round exchanges the
+   * whole table with the successor.
+   */
+  void correctMembership(ChordID<InetAddress> pickedOwner, boolean pickedUnreachable,
+                         ChordID<InetAddress> owner) {
+    boolean changed = false;
+    if (pickedUnreachable && !failureDetector.isAvailable(pickedOwner.getKey())) {
+      changed = membership.markDown(pickedOwner);
+    }
+    if (owner != null) {
+      changed |= membership.addIfMissing(owner);
+    }
+    roundsSinceFullSync = ChordConfig.MEMBERSHIP_FULL_SYNC_ROUNDS;
+    if (changed) {
+      markRoutingChanged();
+    }
+  }
+
+  @Override
+  public List<MembershipUpdate> exchangeMembership(ChordID<InetAddress> callerID,
+                                                   List<MembershipUpdate> updates,
+                                                   boolean fullTable) throws RemoteException {
+    heardFrom(callerID);
+    if (membership.applyAll(updates)) {
+      markRoutingChanged();
+    }
+    return fullTable ? membership.getAll() : membership.takeRumors();
+  }
+
+  /**
+   * Walks back from successor through predecessors for as long as they lie between this node and
+   * it, and returns where the walk stopped. Mostly that is no step or one, but a node that got a
+   * successor far ahead while many nodes were joining would otherwise come back by only one node
+   * per stabilization round.
+   */
+  private ChordID<InetAddress> walkBackToSuccessor(ChordID<InetAddress> successor,
+                                                   ChordOperations successorROR) {
+    for (int step = 0; step < ChordConfig.STABILIZE_MAX_STEPS && successorROR != null; step++) {
+      ChordID<InetAddress> predecessorOfSuccessor;
+      try {
+        long callStart = rttClock.getAsLong();
+        predecessorOfSuccessor = successorROR.getPredecessor(selfChordID);
+        recordRtt(successor, callStart);
+      } catch (Exception e) {
+        e.printStackTrace();
+        ChordRMIUtils.invalidateRemoteNodeObject(successor);
+        break;
+      }
+      logger.debug("Predecessor found from successor is " + predecessorOfSuccessor);
+      if (!predecessorOfSuccessor.inRange(selfChordID, successor, false, false)) {
+        break;
+      }
+      successor = predecessorOfSuccessor;
+      successorROR = ChordRMIUtils.getRemoteNodeObject(successor);
+    }
+    return successor;
   }
 
   /* Get a notification from my possible new predecessor */
   @Override
   public void notify(ChordID<InetAddress> callerID, ChordID<InetAddress> possiblePredecessor)
       throws RemoteException {
-    logger.debug("[Entry] Method:  notify " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + possiblePredecessor);
+    heardFrom(callerID);
 
-    logger.debug(" Current predecessor is " + predecessorChordID);
+    ChordID<InetAddress> predecessor = routingState.predecessor;
     /* If new value is more closer or current predecessor is down => update predecessor */
-    if (possiblePredecessor.inRange(predecessorChordID, selfChordID, false, false)) {
-      setPredecessorChordID(Event.NEW_PREDECESSOR, possiblePredecessor);
+    if (possiblePredecessor.inRange(predecessor, selfChordID, false, false)) {
+      setPredecessorChordID(Event.NEW_PREDECESSOR, predecessor, possiblePredecessor);
     }
-    logger.debug(" Updated predecessor is " + predecessorChordID);
-
-    logger.debug("[Exit] Method:  notify " + "@" + selfChordID +
-		 " Caller: " + callerID + "Parameters: " + possiblePredecessor);
   }
 
+  /* A neighbour is leaving the ring, splice it out of the routing state */
+  @Override
+  public void notifyLeave(ChordID<InetAddress> callerID, ChordID<InetAddress> leavingID,
+                          ChordID<InetAddress> predecessor, ChordID<InetAddress> successor)
+      throws RemoteException {
+    logger.info("Node " + leavingID + " is leaving, its successor " + successor
+                + " takes over and predecessor " + predecessor + " stays");
+    ChordRMIUtils.invalidateRemoteNodeObject(leavingID);
+    membership.markDown(leavingID);
 
+    ChordID<InetAddress> prevSuccessor;
+    ChordID<InetAddress> prevPredecessor;
+    synchronized (this) {
+      prevSuccessor = routingState.getSuccessor();
+      prevPredecessor = routingState.predecessor;
+      RoutingState state = routingState.withoutNode(leavingID, successor);
+      if (leavingID.equals(prevPredecessor)) {
+        state = state.withPredecessor(predecessor);
+      }
+      routingState = state;
+    }
+    markRoutingChanged();
 
-  private void updateSuccessorList() throws RemoteException {
-    logger.debug("[Entry] Method:  updateSuccessorList " + "@" + selfChordID +
-		 " Caller: " + "Parameters: ");
+    if (leavingID.equals(prevSuccessor)) {
+      upcallDispatcher.submit(selfChordID, Event.SUCCESSOR_LEFT, prevSuccessor, successor);
+    }
+    if (leavingID.equals(prevPredecessor)) {
+      upcallDispatcher.submit(selfChordID, Event.PREDECESSOR_LEFT, prevPredecessor, predecessor);
+    }
+  }
 
-    /* Flush all entries from successor list and regenerate it */
-    //successorList.clear();
 
-    /* First entry in the successor list is direct successor */
-//    synchronized (this) {
-      if (successorList.size() == 0) {
-        successorList.add(0, getSuccessor(selfChordID));
-      } else {
-        successorList.set(0, getSuccessor(selfChordID));
-      }
-//    }
 
-    /* First update current entries in the list */
-    for (int i = 1; i < ChordConfig.SUCCESSOR_LIST_MAX_SIZE; i++) {
-      /* Set (i+1)'th successor entry by querying i'th entry node for its successor */
+  private void updateSuccessorList() throws RemoteException {
+    List<ChordID<InetAddress>> previousList = routingState.successorList;
+
+    /* First entry in the successor list is direct successor, rest of the list is taken from the
+    successor's own list in a single call */
+    ChordID<InetAddress> successor = getSuccessor(selfChordID);
+    ArrayList<ChordID<InetAddress>> newList = new ArrayList<>();
+    newList.add(successor);
+    if (!successor.equals(selfChordID)) {
       try {
-        ChordOperations previousEntryROR = ChordRMIUtils.getRemoteNodeObject(successorList.get(i - 1).getKey());
-        ChordID<InetAddress> nextSuccessor = previousEntryROR.getSuccessor(selfChordID);
-        if (i < successorList.size()) {
-          successorList.set(i, nextSuccessor);
-        } else {
-          successorList.add(nextSuccessor);
+        ChordOperations successorROR = ChordRMIUtils.getRemoteNodeObject(successor);
+        if (successorROR == null) {
+          throw new RemoteException("Unable to get RMI object for " + successor);
         }
-      } catch (Exception e ) {
+        long callStart = rttClock.getAsLong();
+        List<ChordID<InetAddress>> successorsList = successorROR.getSuccessorList(selfChordID);
+        recordRtt(successor, callStart);
+        for (ChordID<InetAddress> entry : successorsList) {
+          /* List has wrapped around the ring */
+          if (newList.size() >= SUCCESSOR_LIST_MAX_SIZE || entry.equals(selfChordID)) {
+            break;
+          }
+          newList.add(entry);
+        }
+      } catch (RemoteException e) {
         e.printStackTrace();
-        break;
+        ChordRMIUtils.invalidateRemoteNodeObject(successor);
+        /* Keep older entries around, they are still useful if successor has failed */
+        for (int i = 1; i < previousList.size() && newList.size() < SUCCESSOR_LIST_MAX_SIZE; i++) {
+          newList.add(previousList.get(i));
+        }
       }
     }
+    synchronized (this) {
+      routingState = routingState.withSuccessorList(newList);
+    }
 
-
-    logger.info("Successor list for node  " + selfChordID + " " + successorList);
-
-    logger.debug("[Exit] Method:  updateSuccessorList " + "@" + selfChordID +
-		 " Caller: " + "Parameters: ");
+    if (!previousList.equals(newList)) {
+      markRoutingChanged();
+      logger.info("Successor list for node  " + selfChordID + " " + newList);
+    }
   }
 
   /**
@@ -322,11 +1017,8 @@ class ChordNode implements ChordOperations {
    * table re-check its successor and update if required.
    */
   void fixFingers() throws RemoteException {
-    logger.debug("[Entry] Method:  fixFingers " + "@" + selfChordID +
-		 " Caller: " + "Parameters: ");
-
       /* Always re-search for successor of entry 1 in finger table to remove stale entries */
-    ChordOperations successorROR = ChordRMIUtils.getRemoteNodeObject(getSuccessor(selfChordID).getKey());
+    ChordOperations successorROR = getLiveNodeObject(getSuccessor(selfChordID));
 
     if (successorROR == null) {
 	/* unable to contact with successor mark this successor as failed
@@ -334,10 +1026,13 @@ class ChordNode implements ChordOperations {
       //TODO: move all keys for failed node to new successor
       logger.error("Unable to get RMI object for successor!");
       /* Check next available node in successor list */
-      for (int i = 1; i < successorList.size(); i++) {
-	successorROR = ChordRMIUtils.getRemoteNodeObject(successorList.get(i).getKey());
+      List<ChordID<InetAddress>> successors = routingState.successorList;
+      for (int i = 1; i < successors.size(); i++) {
+	successorROR = getLiveNodeObject(successors.get(i));
 	if (successorROR != null) {
-	  setSuccessor(Event.SUCCESSOR_FAILED, successorList.get(i));
+	  membership.markDown(successors.get(0));
+	  setSuccessor(Event.SUCCESSOR_FAILED, successors.get(i));
+	  ChordMetrics.recordSuccessorFailover();
 	  break;
 	}
       }
@@ -349,28 +1044,7 @@ class ChordNode implements ChordOperations {
     } else {
       logger.debug("FixFingers with successor " + getSuccessor(selfChordID));
 
-      for (int i = 1; i < fingerTable.MAX_SIZE; i++) {
-	ChordID<InetAddress> responsibleNode;
-	FingerTableEntry entry = fingerTable.getEntry(i);
-	/* If successorID of previous entry is still bigger than this entry.RangeStart
-	then use it as successor. Else ask our successor to find correct successor for this entry
-         */
-	if (entry.hashRangeStart
-		.inRange(selfChordID, fingerTable.getEntry(i - 1).responsibleNodeID, true, false)) {
-	  responsibleNode = fingerTable.getEntry(i - 1).responsibleNodeID;
-	} else {
-          try {
-            responsibleNode = successorROR.getSuccessor(selfChordID, fingerTable.getEntry(i).hashRangeStart);
-          } catch (RemoteException e) {
-            e.printStackTrace();
-            responsibleNode = selfChordID;
-          }
-	}
-
-//        synchronized (this) {
-          entry.responsibleNodeID = responsibleNode;
-//        }
-      }
+      refreshFingers(successorROR);
 
       /* Also update your successor list */
       updateSuccessorList();
@@ -378,23 +1052,311 @@ class ChordNode implements ChordOperations {
 
 
     /* Also check if your predecessor is still up and running */
-    if (ChordRMIUtils.getRemoteNodeObject(predecessorChordID.getKey()) == null) {
-      //synchronized (this) {
-        setPredecessorChordID(Event.PREDECESSOR_FAILED, selfChordID);
-      //}
+    ChordID<InetAddress> predecessor = routingState.predecessor;
+    if (getLiveNodeObject(predecessor) == null) {
+      if (setPredecessorChordID(Event.PREDECESSOR_FAILED, predecessor, selfChordID)) {
+        membership.markDown(predecessor);
+        ChordMetrics.recordPredecessorFailure();
+      }
+    }
+  }
+  
+  /**
+   * Recomputes finger table entries. Entries whose range starts before our successor point to the
+   * successor and are set locally. For the rest our successor is asked to find the responsible
+   * node; these lookups run concurrently on fingerFixer. If ChordConfig.FINGERS_PER_ROUND is set,
+   * only that many remote lookups are made per round, continuing from where last round stopped.
+   */
+  private void refreshFingers(ChordOperations successorROR) throws RemoteException {
+    long roundStart = System.nanoTime();
+    ChordID<InetAddress> successor = getSuccessor(selfChordID);
+    /* Finger ranges never change, any snapshot will do for them */
+    FingerTable fingerTable = routingState.fingerTable;
+
+    List<ChordID<InetAddress>> refreshed =
+        new ArrayList<>(Collections.nCopies(FingerTable.MAX_SIZE, (ChordID<InetAddress>) null));
+    List<Integer> remoteFingers = new ArrayList<>();
+    for (int i = 1; i < FingerTable.MAX_SIZE; i++) {
+      if (fingerTable.getEntry(i).hashRangeStart.inRange(selfChordID, successor, true, false)) {
+        refreshed.set(i, successor);
+      } else {
+        remoteFingers.add(i);
+      }
     }
 
-    logger.info(fingerTable.toString());
-    logger.info("Predecessor is: " + predecessorChordID);
+    List<Integer> lookupFingers = selectFingersToLookup(remoteFingers);
+    List<Callable<ChordID<InetAddress>>> lookups = new ArrayList<>();
+    for (int i : lookupFingers) {
+      Hash rangeStart = fingerTable.getEntry(i).hashRangeStart;
+      lookups.add(() -> successorROR.getSuccessor(selfChordID, rangeStart));
+    }
+    try {
+      List<Future<ChordID<InetAddress>>> results =
+          fingerFixer.invokeAll(lookups, ChordConfig.STABILIZER_PERIOD, TimeUnit.SECONDS);
+      /* A finger whose lookup failed or did not finish in time keeps its previous entry */
+      for (int k = 0; k < results.size(); k++) {
+        try {
+          refreshed.set(lookupFingers.get(k), results.get(k).get());
+        } catch (ExecutionException e) {
+          logger.error("Unable to lookup finger " + lookupFingers.get(k) + ": " + e.getCause());
+          /* Only an error of the call itself means the successor failed, a failed hop further
+          on just leaves the result empty */
+          if (e.getCause() instanceof RemoteException) {
+            ChordRMIUtils.invalidateRemoteNodeObject(successor);
+          }
+        } catch (CancellationException e) {
+          logger.error("Lookup of finger " + lookupFingers.get(k) + " did not finish in time");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    int staleFingers = 0;
+    synchronized (this) {
+      List<FingerTableEntry> entries = routingState.fingerTable.copyEntries();
+      for (int i = 1; i < FingerTable.MAX_SIZE; i++) {
+        FingerTableEntry entry = entries.get(i);
+        if (refreshed.get(i) != null && !refreshed.get(i).equals(entry.responsibleNodeID)) {
+          entries.set(i, entry.withResponsibleNodeID(refreshed.get(i)));
+          staleFingers++;
+        }
+      }
+      routingState = routingState.withFingerTable(new FingerTable(entries));
+    }
 
-    logger.debug("[Exit] Method:  fixFingers " + "@" + selfChordID +
-		 " Caller: " + "Parameters: ");
+    try {
+      selectProximityFingers();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    lastFixFingersMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - roundStart);
+    lastStaleFingers = staleFingers;
+    if (staleFingers > 0) {
+      ChordMetrics.recordFingerChanges(staleFingers);
+      markRoutingChanged();
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Finger round took " + lastFixFingersMillis + "ms, " + lookups.size()
+                   + " lookups, " + staleFingers + " stale fingers fixed");
+    }
   }
-  
+
+  /**
+   * Proximity neighbor selection. Any node lying in [start, end) of a finger is a correct choice
+   * for that finger, so among the known nodes in each finger's range pick the one with the lowest
+   * round trip time. Known nodes without a recent sample are pinged first so that they can be
+   * compared; nodes that do not answer are never picked.
+   */
+  private void selectProximityFingers() throws InterruptedException {
+    List<ChordID<InetAddress>> candidates = getKnownNodes();
+    candidates.remove(selfChordID);
+
+    List<Callable<Void>> probes = new ArrayList<>();
+    for (ChordID<InetAddress> candidate : candidates) {
+      if (!latencyTracker.hasRecentSample(candidate.getKey())) {
+        probes.add(() -> {
+          getLiveNodeObject(candidate);
+          return null;
+        });
+      }
+    }
+    fingerFixer.invokeAll(probes, ChordConfig.STABILIZER_PERIOD, TimeUnit.SECONDS);
+
+    List<ChordID<InetAddress>> closestNodes =
+        new ArrayList<>(Collections.nCopies(FingerTable.MAX_SIZE, (ChordID<InetAddress>) null));
+    FingerTable fingerTable = routingState.fingerTable;
+    for (int i = 1; i < FingerTable.MAX_SIZE; i++) {
+      FingerTableEntry entry = fingerTable.getEntry(i);
+      ChordID<InetAddress> closestNode = null;
+      long closestRtt = Long.MAX_VALUE;
+      for (ChordID<InetAddress> candidate : candidates) {
+        long rtt = latencyTracker.getRtt(candidate.getKey());
+        if (rtt >= 0 && rtt < closestRtt
+            && candidate.inRange(entry.hashRangeStart, entry.hashRangeEnd, true, false)) {
+          closestNode = candidate;
+          closestRtt = rtt;
+        }
+      }
+      closestNodes.set(i, closestNode);
+    }
+
+    synchronized (this) {
+      List<FingerTableEntry> entries = routingState.fingerTable.copyEntries();
+      for (int i = 1; i < FingerTable.MAX_SIZE; i++) {
+        entries.set(i, entries.get(i).withProximityNodeID(closestNodes.get(i)));
+      }
+      routingState = routingState.withFingerTable(new FingerTable(entries));
+    }
+  }
+
+  /* Record round trip time of a call to nodeID that started at startNanos and succeeded */
+  private void recordRtt(ChordID<InetAddress> nodeID, long startNanos) {
+    latencyTracker.record(nodeID.getKey(), rttClock.getAsLong() - startNanos);
+    failureDetector.heartbeat(nodeID.getKey());
+  }
+
+  /* An incoming call is as good a heartbeat of the caller as a reply from it */
+  private void heardFrom(ChordID<InetAddress> callerID) {
+    if (callerID != null && !callerID.getKey().equals(selfIP)) {
+      failureDetector.heartbeat(callerID.getKey());
+    }
+  }
+
+  /* True unless the failure detector suspects the machine running nodeID */
+  static boolean isAvailable(ChordID<InetAddress> nodeID) {
+    return failureDetector.isAvailable(nodeID.getKey());
+  }
+
+  /* True if peer may be dialed, see PhiAccrualFailureDetector.shouldContact */
+  static boolean shouldContact(InetAddress peer) {
+    return failureDetector.shouldContact(peer);
+  }
+
+  /* Feeds the outcome of a call to peer made outside of chord routing into the failure detector */
+  static void recordCallResult(InetAddress peer, boolean succeeded) {
+    if (succeeded) {
+      failureDetector.heartbeat(peer);
+    } else {
+      failureDetector.failure(peer);
+    }
+  }
+
+  /* Runs finger lookups and proximity probes of all nodes of this JVM on executor instead */
+  static void setFingerExecutor(ExecutorService executor) {
+    fingerFixer = executor;
+  }
+
+  /* Measures round trip times of all nodes of this JVM on nanoClock instead of the wall clock */
+  static void setRttClock(LongSupplier nanoClock) {
+    rttClock = nanoClock;
+  }
+
+  /* Pick the fingers to lookup remotely in this round. All of them unless incremental mode is on */
+  private List<Integer> selectFingersToLookup(List<Integer> remoteFingers) {
+    int perRound = ChordConfig.FINGERS_PER_ROUND;
+    if (perRound <= 0 || remoteFingers.size() <= perRound) {
+      return remoteFingers;
+    }
+    /* Rotate through remote fingers starting from first one at or after nextFingerToFix */
+    int first = 0;
+    while (first < remoteFingers.size() && remoteFingers.get(first) < nextFingerToFix) {
+      first++;
+    }
+    List<Integer> selected = new ArrayList<>(perRound);
+    for (int k = 0; k < perRound; k++) {
+      selected.add(remoteFingers.get((first + k) % remoteFingers.size()));
+    }
+    nextFingerToFix = selected.get(perRound - 1) + 1;
+    return selected;
+  }
+
+  /* Time taken by last finger table refresh round */
+  long getLastFixFingersMillis() {
+    return lastFixFingersMillis;
+  }
+
+  /* Number of finger entries found stale and changed in last refresh round */
+  int getLastStaleFingers() {
+    return lastStaleFingers;
+  }
+
+  /* True if id falls between predecessor and this node, i.e. this node is the primary owner of id */
+  boolean isResponsibleFor(Hash id) {
+    return !leaving && id.inRange(routingState.predecessor, selfChordID, false, true);
+  }
+
+  /**
+   * Returns first successor that runs on some other machine. Virtual nodes of this process share
+   * one store, so keeping a replica on them would not survive failure of this machine. Falls back
+   * to direct successor when no other machine is known.
+   */
+  ChordID<InetAddress> getReplicationSuccessor() {
+    RoutingState state = routingState;
+    ChordID<InetAddress> successor = state.getSuccessor();
+    if (!successor.getKey().equals(selfIP)) {
+      return successor;
+    }
+    for (ChordID<InetAddress> entry : state.successorList) {
+      if (!entry.getKey().equals(selfIP)) {
+        return entry;
+      }
+    }
+    return successor;
+  }
+
+  /* All nodes this node knows of: itself, its predecessor, successor list and finger table nodes */
+  List<ChordID<InetAddress>> getKnownNodes() {
+    RoutingState state = routingState;
+    Set<ChordID<InetAddress>> knownNodes = new LinkedHashSet<>();
+    knownNodes.add(selfChordID);
+    knownNodes.add(state.predecessor);
+    knownNodes.addAll(state.successorList);
+    for (int i = 0; i < FingerTable.MAX_SIZE; i++) {
+      knownNodes.add(state.fingerTable.getEntry(i).responsibleNodeID);
+    }
+    return new ArrayList<>(knownNodes);
+  }
+
+  /* Predecessor, this node and its successor list in ring order. The predecessor is left out while
+  it is not known */
+  List<ChordID<InetAddress>> getRingSegment() {
+    RoutingState state = routingState;
+    List<ChordID<InetAddress>> segment = new ArrayList<>();
+    if (state.predecessor != null) {
+      segment.add(state.predecessor);
+    }
+    segment.add(selfChordID);
+    segment.addAll(state.successorList);
+    return segment;
+  }
+
+  /**
+   * Returns RMI object of given node only if that node still answers. RMI stubs are cached, so
+   * having a stub says nothing about the node being alive. A stub on which the call fails is
+   * dropped and looked up once more from the registry of that node.
+   */
+  private ChordOperations getLiveNodeObject(ChordID<InetAddress> nodeID) {
+    if (!failureDetector.shouldContact(nodeID.getKey())) {
+      logger.debug("Skipping " + nodeID + ", it is suspected to have failed");
+      return null;
+    }
+    ChordOperations nodeROR = ChordRMIUtils.getRemoteNodeObject(nodeID);
+    if (nodeROR != null) {
+      try {
+        long callStart = rttClock.getAsLong();
+        nodeROR.getSuccessor(selfChordID);
+        recordRtt(nodeID, callStart);
+      } catch (RemoteException e) {
+        logger.error("Cached RMI object for " + nodeID + " is stale. Looking it up again");
+        ChordRMIUtils.invalidateRemoteNodeObject(nodeID);
+        nodeROR = ChordRMIUtils.getRemoteNodeObject(nodeID);
+      }
+    }
+    return nodeROR;
+  }
+
+  /**
+   * Dumps routing state to the log and as JSON to the analysis log. Only does so when routing state
+   * has changed since last dump, an unchanged ring costs nothing to watch.
+   */
   public void printNode() {
 	  //analysisLogger.info("\n"+selfChordID.getKey()+"$"+selfChordID.getValue()+"\n"+fingerTable.toSimpleString());
+	  long version = routingVersion.get();
+	  if (version == lastPrintedVersion) {
+	    return;
+	  }
+	  lastPrintedVersion = version;
+	  RoutingState state = routingState;
+	  logger.info(state.fingerTable.toString());
+	  logger.info("Predecessor is: " + state.predecessor);
+	  NodeInfo info = new NodeInfo(selfChordID, state.predecessor, state.fingerTable,
+	                               new ArrayList<>(state.successorList));
 	  Gson gson = new Gson();
-	  analysisLogger.info("JSON-PAYLOAD\n"+gson.toJson(this));
+	  analysisLogger.info("JSON-PAYLOAD\n"+gson.toJson(info));
   }
   
 }
@@ -3,6 +3,7 @@ package edu.ncsu.chord;
 import java.net.InetAddress;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 
 /**
@@ -27,6 +28,19 @@ public interface ChordOperations extends Remote {
    */
   ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID) throws RemoteException;
 
+  /**
+   * Returns whole successor list of this node, direct successor first. Lets a node rebuild its own
+   * list from its successor's list in one call.
+   */
+  List<ChordID<InetAddress>> getSuccessorList(ChordID<InetAddress> callerID) throws RemoteException;
+
+  /**
+   * Returns the distinct nodes of this node's finger table, in finger order. A joining node builds
+   * its first finger table from the one of its successor instead of starting with every finger
+   * pointing at itself.
+   */
+  List<ChordID<InetAddress>> getFingerNodes(ChordID<InetAddress> callerID) throws RemoteException;
+
   /**
    * @return returns the ChordID of the predecessor of this node.
    */
@@ -43,6 +57,32 @@ public interface ChordOperations extends Remote {
    */
   ChordID<InetAddress> getClosestPrecedingFinger(ChordID<InetAddress> callerID, Hash id) throws RemoteException;
 
+  /**
+   * Recursive version of getSuccessor. If this node can not answer the query it forwards it to its
+   * closest preceding finger instead of returning that finger to the caller. Calls are
+   * synchronous, so the answer travels back through every node on the path, each holding a server
+   * thread until it does. If forwarding fails the node finishes the query iteratively itself.
+   *
+   * @param hops number of hops the query has made before reaching this node
+   * @return successor of @param id along with the number of hops taken to find it. null if the
+   * query failed or took more than ChordConfig.MAX_LOOKUP_HOPS hops.
+   */
+  LookupResult findSuccessor(ChordID<InetAddress> callerID, Hash id, int hops) throws RemoteException;
+
+  /**
+   * Batched version of findSuccessor. Ids this node can answer are answered right away, the rest
+   * are split by closest preceding finger and each part is forwarded to its finger in one call.
+   * Sorted ids make the parts contiguous but any order is accepted. Ids whose part could not be
+   * forwarded are looked up iteratively from this node, as in findSuccessor.
+   *
+   * @param hops number of hops the batch has been forwarded so far. Once it reaches
+   * ChordConfig.MAX_LOOKUP_HOPS ids are no longer forwarded.
+   * @return successors of @param ids in the same order as ids. An entry is null if the lookup of
+   * that id failed or was given up.
+   */
+  List<ChordID<InetAddress>> getSuccessors(ChordID<InetAddress> callerID, List<Hash> ids, int hops)
+      throws RemoteException;
+
 
 
   /* New node join and stabilization methods */
@@ -51,4 +91,23 @@ public interface ChordOperations extends Remote {
    * as its predecessor if required.
    */
   void notify(ChordID<InetAddress> callerID, ChordID<InetAddress> id) throws RemoteException;
+
+  /**
+   * Tells a neighbour that leavingID is leaving the ring, so that it splices leavingID out right
+   * away instead of waiting for calls to it to fail. Nodes pointing at leavingID point at its
+   * successor instead, and if leavingID was the predecessor of this node its predecessor takes
+   * its place.
+   */
+  void notifyLeave(ChordID<InetAddress> callerID, ChordID<InetAddress> leavingID,
+                   ChordID<InetAddress> predecessor, ChordID<InetAddress> successor)
+      throws RemoteException;
+
+  /**
+   * Membership gossip of LookupMode.ONE_HOP. Applies the membership changes the caller sends and
+   * answers with the changes this node is passing on, or with its whole membership table if
+   * fullTable is set.
+   */
+  List<MembershipUpdate> exchangeMembership(ChordID<InetAddress> callerID,
+                                            List<MembershipUpdate> updates, boolean fullTable)
+      throws RemoteException;
 }
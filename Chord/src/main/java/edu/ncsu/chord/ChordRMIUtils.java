@@ -8,6 +8,8 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by amit on 22/2/17.
@@ -17,6 +19,21 @@ class ChordRMIUtils {
   /* Keep all loggers transient so that they are not passed over RMI call */
   private final transient static Logger logger = Logger.getLogger(ChordRMIUtils.class);
 
+  /* Stubs of remote nodes are cached so that every routing hop does not cost a registry lookup */
+  private static final RemoteStubCache<ChordID<InetAddress>, ChordOperations> stubCache =
+      new RemoteStubCache<>(ChordConfig.RMI_STUB_CACHE_TTL, TimeUnit.SECONDS);
+
+  /* Replaces RMI and NIO for all calls to other nodes when set */
+  private static volatile ChordTransport transport;
+
+  /* Nodes hosted by this process. Calls to them are made directly rather than through RMI or NIO,
+  so that a node serving a call does not hold a transport thread waiting for a call to itself */
+  private static final CopyOnWriteArrayList<ChordNode> localNodes = new CopyOnWriteArrayList<>();
+
+  static void setTransport(ChordTransport chordTransport) {
+    transport = chordTransport;
+  }
+
   private static Registry getRegistry() {
     Registry registry = null;
 
@@ -36,12 +53,17 @@ class ChordRMIUtils {
     return registry;
   }
 
+  /* Makes calls to node from this process go to it directly */
+  static void registerLocalNode(ChordNode node) {
+    localNodes.addIfAbsent(node);
+  }
+
   static boolean exportNodeObjectRMI(ChordNode n) {
     Registry registry = getRegistry();
 
     try {
       ChordOperations nops = (ChordOperations) UnicastRemoteObject.exportObject(n, 0);
-      registry.rebind("ChordOperation", nops);
+      registry.rebind(getBindingName(n.selfChordID.getVirtualIndex()), nops);
       String entries[] = registry.list();
       logger.debug("Registry entries:");
       for (String binding : entries) {
@@ -57,9 +79,82 @@ class ChordRMIUtils {
     return true;
   }
 
+  /* Every virtual node of a process is bound in the same registry under its own name. Virtual
+  node 0 keeps the name a single node always had so that bootstrap nodes are found by ip alone */
+  static String getBindingName(int virtualIndex) {
+    return virtualIndex == 0 ? "ChordOperation" : "ChordOperation-" + virtualIndex;
+  }
+
+  /* Returns RMI object for virtual node 0 of the process running on ip. Used while bootstrapping,
+  when ip is all we know about a node */
   static ChordOperations getRemoteNodeObject(InetAddress ip) {
+    return getRemoteNodeObject(new ChordID<>(ip));
+  }
+
+  /**
+   * Returns RMI object for the chord node nodeID. Nodes of this process are returned as they are.
+   * For others a cached stub is returned if there is one, otherwise the stub is looked up in the
+   * registry of that node. Whoever gets a RemoteException while calling a method on the returned
+   * object should call invalidateRemoteNodeObject.
+   */
+  static ChordOperations getRemoteNodeObject(ChordID<InetAddress> nodeID) {
+    ChordTransport chordTransport = transport;
+    if (chordTransport != null) {
+      return chordTransport.getNodeObject(nodeID);
+    }
+    for (ChordNode localNode : localNodes) {
+      /* Compared with the current ID as it changes when the node is relocated */
+      if (localNode.selfChordID.equals(nodeID)) {
+        return localNode;
+      }
+    }
+    ChordOperations nops = stubCache.get(nodeID);
+    if (nops == null && ChordConfig.TRANSPORT == TransportMode.NIO) {
+      nops = NioChordClient.connect(nodeID);
+      if (nops != null) {
+        nops = new MeteredChordOperations(nops, nodeID.getKey());
+        stubCache.put(nodeID, nops);
+      }
+    }
+    if (nops == null) {
+      nops = lookupRemoteNodeObject(nodeID.getKey(), getBindingName(nodeID.getVirtualIndex()));
+      if (nops != null) {
+        nops = new MeteredChordOperations(nops, nodeID.getKey());
+        stubCache.put(nodeID, nops);
+      }
+    }
+    return nops;
+  }
+
+  /* Drop cached stub of nodeID. Next getRemoteNodeObject will look it up again */
+  static void invalidateRemoteNodeObject(ChordID<InetAddress> nodeID) {
+    ChordTransport chordTransport = transport;
+    if (chordTransport != null) {
+      chordTransport.invalidateNodeObject(nodeID);
+      return;
+    }
+    stubCache.invalidate(nodeID);
+  }
+
+  static long getStubCacheHits() {
+    return stubCache.getHits();
+  }
+
+  static long getStubCacheMisses() {
+    return stubCache.getMisses();
+  }
+
+  static long getStubCacheInvalidations() {
+    return stubCache.getInvalidations();
+  }
+
+  static int getStubCacheSize() {
+    return stubCache.size();
+  }
+
+  private static ChordOperations lookupRemoteNodeObject(InetAddress ip, String bindingName) {
     /* INetAddress toString adds a '/' at the beginning remove that */
-    String serverURL = "rmi://" + ip.toString().substring(1) + "/ChordOperation";
+    String serverURL = "rmi://" + ip.toString().substring(1) + "/" + bindingName;
     ChordOperations nops;
     try {
       nops = (ChordOperations) Naming.lookup(serverURL);
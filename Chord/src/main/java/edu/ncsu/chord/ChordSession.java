@@ -7,81 +7,276 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by amit on 1/4/17.
  */
 public class ChordSession {
 
+  /* Virtual node 0. Its ID is the one a process hosting a single node would have */
   ChordNode node;
 
+  /* All virtual nodes hosted by this process, node being the first one */
+  List<ChordNode> nodes;
+
+  /* Runs stabilization rounds for all virtual nodes once joined */
+  StabilizationScheduler stabilizer;
+
   /* Keep all loggers transient so that they are not passed over RMI call */
   private final transient static Logger logger = Logger.getLogger(ChordSession.class);
 
+  /* Lookups routing through the ring by key. Concurrent lookups of a key wait for the one in
+  flight and share its result instead of each making the same calls. A lookup that finishes also
+  answers those waiting for other keys that fall in the range of the owner it found */
+  private final ConcurrentHashMap<ChordID<String>, CompletableFuture<LookupResult>>
+      lookupsInFlight = new ConcurrentHashMap<>();
+
   ChordSession() {
-    node = new ChordNode(getMyEthernetIP());
+    InetAddress selfIP = getMyEthernetIP();
+    nodes = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, ChordConfig.VIRTUAL_NODES); i++) {
+      nodes.add(new ChordNode(selfIP, i));
+    }
+    node = nodes.get(0);
   }
 
   public boolean join() {
     boolean result = true;
 
-    /* Export this object so that it is available for RMI calls */
-    ChordRMIUtils.exportNodeObjectRMI(node);
+    for (ChordNode vnode : nodes) {
+      /* Export this object so that it is available for RMI calls */
+      ChordRMIUtils.registerLocalNode(vnode);
+      ChordRMIUtils.exportNodeObjectRMI(vnode);
+      if (ChordConfig.TRANSPORT == TransportMode.NIO) {
+        NioChordServer.exportNodeObject(vnode);
+      }
+
+      try {
+        logger.info("Node:" + vnode.selfChordID + "Joining network..");
+        vnode.join(ChordConfig.bootstrapNodes);
+      } catch (RemoteException e) {
+        result = false;
+        e.printStackTrace();
+      }
+    }
+
+    /* One scheduler thread stabilizes all virtual nodes, backing off while nothing changes */
+    stabilizer = new StabilizationScheduler(nodes);
+    stabilizer.start();
+    ChordMetrics.register(nodes, stabilizer);
+
+    return result;
+  }
+
+  /**
+   * Leaves the ring gracefully, e.g. before a restart. Every virtual node hands its keys over to
+   * the node taking them over through UpcallEventHandler.handleLeave and then tells its
+   * neighbours to splice it out. Returns once all of them have acknowledged. The session must not
+   * be used afterwards.
+   *
+   * @return false if some virtual node could not leave cleanly; its neighbours will notice it is
+   * gone through failure detection instead
+   */
+  public boolean leave() {
+    if (stabilizer != null && !stabilizer.stop()) {
+      logger.error("Stabilization round still running, leaving anyway");
+    }
+    ChordMetrics.unregister(nodes, stabilizer);
+    boolean result = true;
+    for (ChordNode vnode : nodes) {
+      logger.info("Node:" + vnode.selfChordID + " Leaving network..");
+      result &= vnode.leave();
+    }
+    return result;
+  }
+
+  /**
+   * Moves virtual node virtualNodeID of this process to position on the ring, e.g. to take part
+   * of the keys of an overloaded node. The node leaves gracefully, handing its keys over through
+   * UpcallEventHandler.handleLeave, and joins again at position; keys that then belong to it are
+   * handed over by its new successor through the usual NEW_PREDECESSOR event. Keys are moved on
+   * the calling thread, only the swap of the node ID runs between two stabilization rounds.
+   *
+   * @return ID of the node at its new position, or null if it could not be moved
+   */
+  public ChordID<InetAddress> relocate(ChordID<InetAddress> virtualNodeID, SHA256Hash position) {
+    for (ChordNode vnode : nodes) {
+      if (!vnode.selfChordID.equals(virtualNodeID)) {
+        continue;
+      }
+      try {
+        return vnode.relocate(position, stabilizer) ? vnode.selfChordID : null;
+      } catch (Exception e) {
+        logger.error("Unable to relocate " + virtualNodeID + " to " + position, e);
+        return null;
+      }
+    }
+    logger.error("No virtual node " + virtualNodeID + " on this process");
+    return null;
+  }
 
+  public ChordID<InetAddress> getResponsibleNodeID(ChordID<String> key) {
+    LookupResult result = lookup(key);
+    return result == null ? null : result.getNodeID();
+  }
+
+  /* Same as getResponsibleNodeID but also tells how many hops the lookup took */
+  public LookupResult lookup(ChordID<String> key) {
+    if (ChordConfig.LOOKUP_MODE == LookupMode.ONE_HOP) {
+      /* Answered from the local membership table, there is no traversal to share */
+      return resolve(key, false);
+    }
+    return coalesce(key, false);
+  }
+
+  /**
+   * Runs the lookup of key unless one is already in flight, in which case its result is waited
+   * for at most ChordConfig.LOOKUP_COALESCE_TIMEOUT. A lookup in flight for another key is never
+   * waited for, as its range is not known before it finishes; it answers the waiting lookups its
+   * range covers once it does. byRouting routes even in LookupMode.ONE_HOP.
+   */
+  private LookupResult coalesce(ChordID<String> key, boolean byRouting) {
+    CompletableFuture<LookupResult> flight = new CompletableFuture<>();
+    CompletableFuture<LookupResult> inFlight = lookupsInFlight.putIfAbsent(key, flight);
+    if (inFlight != null) {
+      LookupResult result = awaitLookup(inFlight);
+      if (inFlight.isDone()) {
+        ChordMetrics.recordCoalescedLookup();
+        return result;
+      }
+      /* The lookup waited for is stuck in routing, do not hang along with it */
+      return resolve(key, byRouting);
+    }
+    LookupResult result = null;
     try {
-      logger.info("Node:" + node.selfChordID + "Joining network..");
-      node.join(ChordConfig.bootstrapNodes);
+      result = resolve(key, byRouting);
+    } finally {
+      /* Later callers start a lookup of their own, this result may be stale by the time they come */
+      lookupsInFlight.remove(key, flight);
+      flight.complete(result);
+      if (result != null) {
+        answerWaitingLookups(result);
+      }
+    }
+    return result;
+  }
+
+  private LookupResult resolve(ChordID<String> key, boolean byRouting) {
+    try {
+      return byRouting ? node.route(key) : node.lookup(key);
     } catch (RemoteException e) {
-      result = false;
       e.printStackTrace();
+      return null;
     }
+  }
 
-    Thread stabilizer = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        while(true) {
-          try {
-            node.stabilize();
-            node.fixFingers();
-            node.printNode();
-            Thread.sleep(ChordConfig.STABILIZER_PERIOD * 1000);
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
-        }
+  /* Waits at most ChordConfig.LOOKUP_COALESCE_TIMEOUT for flight, null if it did not finish */
+  private LookupResult awaitLookup(CompletableFuture<LookupResult> flight) {
+    try {
+      return flight.get(ChordConfig.LOOKUP_COALESCE_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      logger.debug("Gave up waiting for a lookup in flight", e);
+    }
+    return null;
+  }
+
+  /* Answers all lookups in flight for keys in (predecessor, owner] of result with result */
+  private void answerWaitingLookups(LookupResult result) {
+    ChordID<InetAddress> owner = result.getNodeID();
+    ChordID<InetAddress> predecessor = result.getPredecessorID();
+    if (owner == null || predecessor == null) {
+      return;
+    }
+    for (Map.Entry<ChordID<String>, CompletableFuture<LookupResult>> entry :
+        lookupsInFlight.entrySet()) {
+      if (entry.getKey().inRange(predecessor, owner, false, true)
+          && lookupsInFlight.remove(entry.getKey(), entry.getValue())) {
+        entry.getValue().complete(result);
       }
-    });
-    stabilizer.start();
+    }
+  }
 
+  /**
+   * Same as getResponsibleNodeID, but always routes through the ring. Used when the owner found
+   * from the membership table of LookupMode.ONE_HOP or a cached ring rejects a request. Concurrent
+   * calls share lookups in flight like getResponsibleNodeID does.
+   */
+  public ChordID<InetAddress> getResponsibleNodeIDByRouting(ChordID<String> key) {
+    LookupResult result = lookupByRouting(key);
+    return result == null ? null : result.getNodeID();
+  }
 
-    /* Schedule stabilize & fixFingers method to run after every 1 second */
-//
-//    ScheduledExecutorService stabilizer = Executors.newScheduledThreadPool(1);
-//    stabilizer.scheduleAtFixedRate(() -> {
-//      try {
-//        node.stabilize();
-//        node.fixFingers();
-//        node.printNode();
-//      } catch (RemoteException e) {
-//        e.printStackTrace();
-//      }
-//    }, ChordConfig.STABILIZER_INITIAL_DELAY, ChordConfig.STABILIZER_PERIOD, TimeUnit.SECONDS);
+  /* Same as getResponsibleNodeIDByRouting but also tells the range of the owner found */
+  public LookupResult lookupByRouting(ChordID<String> key) {
+    return coalesce(key, true);
+  }
 
-    return result;
+  /* True if getResponsibleNodeID answers from the local membership table without any hop */
+  public boolean isOneHopRouting() {
+    return ChordConfig.LOOKUP_MODE == LookupMode.ONE_HOP;
   }
 
-  public ChordID<InetAddress> getResponsibleNodeID(ChordID<String> key) {
-    ChordID<InetAddress> responsibleNodeID = null;
+  /**
+   * Tells the membership table of one hop routing that getResponsibleNodeID picked pickedOwner for
+   * a key it does not own, so that later requests do not go to the same wrong node. owner is the
+   * node routing found instead, null if routing failed too. pickedOwner is marked down if it could
+   * not be reached and the failure detector suspects it too.
+   */
+  public void correctOwner(ChordID<InetAddress> pickedOwner, boolean pickedUnreachable,
+                           ChordID<InetAddress> owner) {
+    for (ChordNode vnode : nodes) {
+      vnode.correctMembership(pickedOwner, pickedUnreachable, owner);
+    }
+  }
+
+  /**
+   * Finds owners of all keys in one batched traversal instead of one lookup per key. Keys are
+   * sorted before they are sent so that each hop can split them into contiguous parts.
+   *
+   * @return owners in the same order as keys. An entry is null if its lookup failed
+   */
+  public List<ChordID<InetAddress>> getResponsibleNodeIDs(List<ChordID<String>> keys) {
+    List<Integer> order = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      order.add(i);
+    }
+    order.sort((a, b) -> keys.get(a).compareTo(keys.get(b)));
+    /* Keys repeated in the batch are looked up once. slots holds the position in sortedKeys of
+    each key */
+    List<Hash> sortedKeys = new ArrayList<>(keys.size());
+    int[] slots = new int[keys.size()];
+    for (int i : order) {
+      ChordID<String> key = keys.get(i);
+      if (sortedKeys.isEmpty() || !key.equals(sortedKeys.get(sortedKeys.size() - 1))) {
+        sortedKeys.add(key);
+      }
+      slots[i] = sortedKeys.size() - 1;
+    }
+
+    List<ChordID<InetAddress>> owners = new ArrayList<>(Collections.nCopies(keys.size(), null));
     try {
-      responsibleNodeID = node.getSuccessor(node.selfChordID, key);
+      List<ChordID<InetAddress>> sortedOwners = node.getSuccessors(node.selfChordID, sortedKeys, 0);
+      for (int i = 0; i < keys.size(); i++) {
+        owners.set(i, sortedOwners.get(slots[i]));
+      }
     } catch (RemoteException e) {
       e.printStackTrace();
     }
-    return responsibleNodeID;
+    return owners;
   }
 
   public ChordID<InetAddress> getSelfSuccessor() {
@@ -94,8 +289,133 @@ public class ChordSession {
     return successor;
   }
 
+  /* True if one of the virtual nodes of this process is the primary owner of key, i.e. key lies
+  between predecessor of that virtual node and the virtual node itself */
+  public boolean isResponsibleFor(Hash key) {
+    for (ChordNode vnode : nodes) {
+      if (vnode.isResponsibleFor(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns every node the virtual nodes of this process currently know of (themselves,
+   * predecessors, successor lists and finger table nodes). This is only a local view and not the
+   * complete ring.
+   */
+  public List<ChordID<InetAddress>> getKnownNodes() {
+    Set<ChordID<InetAddress>> knownNodes = new LinkedHashSet<>();
+    for (ChordNode vnode : nodes) {
+      knownNodes.addAll(vnode.getKnownNodes());
+    }
+    return new ArrayList<>(knownNodes);
+  }
+
+  /**
+   * Runs of consecutive ring members, one for each virtual node of this process: its predecessor,
+   * itself and its successor list. Each node of a run owns the keys between the node before it and
+   * itself.
+   */
+  public List<List<ChordID<InetAddress>>> getRingSegments() {
+    List<List<ChordID<InetAddress>>> segments = new ArrayList<>();
+    for (ChordNode vnode : nodes) {
+      segments.add(vnode.getRingSegment());
+    }
+    return segments;
+  }
+
+  /* IDs of all virtual nodes hosted by this process */
+  public List<ChordID<InetAddress>> getVirtualNodeIDs() {
+    List<ChordID<InetAddress>> ids = new ArrayList<>();
+    for (ChordNode vnode : nodes) {
+      ids.add(vnode.selfChordID);
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the virtual node of this process that holds key, i.e. the first local virtual node
+   * found going clockwise from key. That is the owner of key if key is primary on this process and
+   * the node through which a replica of key arrived otherwise.
+   */
+  public ChordID<InetAddress> getHoldingVirtualNode(Hash key) {
+    List<ChordID<InetAddress>> ids = getVirtualNodeIDs();
+    Collections.sort(ids);
+    for (ChordID<InetAddress> id : ids) {
+      if (id.compareTo(key) >= 0) {
+        return id;
+      }
+    }
+    return ids.get(0);
+  }
+
+  /* Node to which replicas of keys held by virtualNodeID should be passed on. This is the first
+  successor of that virtual node which runs on another machine */
+  public ChordID<InetAddress> getReplicationSuccessor(ChordID<InetAddress> virtualNodeID) {
+    for (ChordNode vnode : nodes) {
+      if (vnode.selfChordID.equals(virtualNodeID)) {
+        return vnode.getReplicationSuccessor();
+      }
+    }
+    return node.getReplicationSuccessor();
+  }
+
+  /**
+   * False if the failure detector suspects nodeID to have failed. Callers use this to skip a known
+   * dead peer instead of waiting for an RMI call to it to time out. Nodes are suspected only after
+   * calls to them have failed, a node merely not heard from for a while is assumed to be alive.
+   */
+  public boolean isAlive(ChordID<InetAddress> nodeID) {
+    return nodeID != null && ChordNode.isAvailable(nodeID);
+  }
+
+  /**
+   * True if peer may be dialed. Same as isAlive, except that a suspected peer is still let through
+   * now and then so that a peer which comes back is noticed.
+   */
+  public boolean shouldContact(InetAddress peer) {
+    return ChordNode.shouldContact(peer);
+  }
+
+  /**
+   * Tells the failure detector how a call to peer made outside of chord went, e.g. one on its
+   * object store. Successful calls count as heartbeats of peer.
+   */
+  public void recordCallResult(InetAddress peer, boolean succeeded) {
+    if (!peer.equals(node.selfIP)) {
+      ChordNode.recordCallResult(peer, succeeded);
+    }
+  }
+
+  /* Number of upcall events of all virtual nodes waiting to be handled */
+  public int getPendingUpcalls() {
+    int pending = 0;
+    for (ChordNode vnode : nodes) {
+      pending += vnode.getUpcallDispatcher().getQueueDepth();
+    }
+    return pending;
+  }
+
+  /* Longest time the registered handler took for a single upcall event */
+  public double getMaxUpcallLatencyMillis() {
+    double max = 0;
+    for (ChordNode vnode : nodes) {
+      max = Math.max(max, vnode.getUpcallDispatcher().getMaxHandlerMillis());
+    }
+    return max;
+  }
+
+  /**
+   * Registers handler for events of all virtual nodes. Events are delivered on a dispatcher thread
+   * of each virtual node, not on the thread that caused them, and a burst of events of the same
+   * type may be delivered as a single event carrying the net change.
+   */
   public void registerUpcall(UpcallEventHandler handler) {
-    node.setUpcallHandler(handler);
+    for (ChordNode vnode : nodes) {
+      vnode.setUpcallHandler(handler);
+    }
   }
 
   public ChordID<InetAddress> getChordNodeID() {
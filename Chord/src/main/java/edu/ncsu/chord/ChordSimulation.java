@@ -0,0 +1,481 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a ring of thousands of ChordNodes inside one JVM over InMemoryTransport and reports how
+ * routing and stabilization behave at that size: rounds until the ring converges, lookup hop and
+ * latency distributions, batched lookups, key load skew between machines, and lookup success under
+ * churn.
+ *
+ * Nodes get no threads of their own. Stabilization rounds are driven from the main thread, node by
+ * node in random order, and finger lookups and upcalls run on the thread that raised them. Round
+ * trip times used for proximity fingers are read from the simulated clock, so a seed gives the
+ * same report on every run, apart from the wall clock times it prints. Settings are system
+ * properties, e.g.
+ *
+ *   mvn exec:java -Dexec.mainClass=edu.ncsu.chord.ChordSimulation -Dsim.nodes=2000 -Dsim.loss=0.01
+ *
+ * sim.nodes         machines in the ring (1000)
+ * sim.virtualNodes  chord nodes per machine (1)
+ * sim.joinsPerRound machines joining between two stabilization rounds while the ring is built,
+ *                   0 joins all of them at once (10)
+ * sim.lookups       lookups measured on the converged ring (10000)
+ * sim.keys          keys placed to measure load skew (100000)
+ * sim.rttMicros     mean simulated round trip time of a call (20000)
+ * sim.loss          probability that a call is lost (0)
+ * sim.churn         fraction of machines replaced in every churn round (0)
+ * sim.churnRounds   stabilization rounds run with churn (20)
+ * sim.gracefulLeave churned machines leave the ring gracefully instead of crashing (false)
+ * sim.maxRounds     rounds given to the ring to converge (200)
+ * sim.fingerTarget  fraction of correct fingers counted as converged (0.99); lost calls leave
+ *                   a few fingers wrong in every round
+ * sim.seed          seed of all random choices (1)
+ *
+ * Chord settings read from system properties, e.g. -Dchord.lookupMode=ONE_HOP, apply as well.
+ */
+public class ChordSimulation {
+
+  private static final int NODES = Integer.getInteger("sim.nodes", 1000);
+  private static final int VIRTUAL_NODES = Integer.getInteger("sim.virtualNodes", 1);
+  private static final int JOINS_PER_ROUND = Integer.getInteger("sim.joinsPerRound", 10);
+  private static final int LOOKUPS = Integer.getInteger("sim.lookups", 10000);
+  private static final int KEYS = Integer.getInteger("sim.keys", 100000);
+  private static final long RTT_MICROS = Long.getLong("sim.rttMicros", 20000);
+  private static final double LOSS = Double.parseDouble(System.getProperty("sim.loss", "0"));
+  private static final double CHURN = Double.parseDouble(System.getProperty("sim.churn", "0"));
+  private static final int CHURN_ROUNDS = Integer.getInteger("sim.churnRounds", 20);
+  private static final boolean GRACEFUL_LEAVE = Boolean.getBoolean("sim.gracefulLeave");
+  private static final int MAX_ROUNDS = Integer.getInteger("sim.maxRounds", 200);
+  private static final double FINGER_TARGET =
+      Double.parseDouble(System.getProperty("sim.fingerTarget", "0.99"));
+  private static final long SEED = Long.getLong("sim.seed", 1);
+
+  /* Reports go here; stderr is silenced since lost calls make nodes print stack traces */
+  private static final PrintStream out = System.out;
+
+  /* Outcome of a batch of lookups */
+  private static class LookupStats {
+    int correct;
+    int wrong;
+    int failed;
+    final int[] hops = new int[64];
+    final Log2Histogram latencyMicros = new Log2Histogram();
+
+    int total() {
+      return correct + wrong + failed;
+    }
+  }
+
+  /**
+   * Runs every task on the thread that submits it, in submission order, so that finger lookups
+   * draw from the transport's random numbers in the same order on every run. Simulated calls never
+   * block, so timeouts are not needed and ignored.
+   */
+  private static class CallerRunsExecutorService extends AbstractExecutorService {
+
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout,
+                                         TimeUnit unit) throws InterruptedException {
+      return invokeAll(tasks);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return false;
+    }
+  }
+
+  private final InMemoryTransport transport = new InMemoryTransport(RTT_MICROS, LOSS, SEED);
+
+  private final Random random = new Random(SEED);
+
+  /* Delivers upcalls on the thread that raised them instead of a thread per node */
+  private final Executor upcallExecutor = Runnable::run;
+
+  /* Chord nodes that are up, all virtual nodes of all machines */
+  private final List<ChordNode> nodes = new ArrayList<>();
+
+  /* Machines that are up, each with its virtual nodes */
+  private final Map<InetAddress, List<ChordNode>> machines = new HashMap<>();
+
+  /* Ground truth: IDs of all nodes that are up, in ring order */
+  private final TreeMap<Hash, ChordID<InetAddress>> ring = new TreeMap<>();
+
+  private int machinesCreated = 0;
+
+  private int joinRetries = 0;
+
+  private static final int JOIN_ATTEMPTS = 5;
+
+  public static void main(String[] args) throws Exception {
+    System.setErr(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+    }));
+    LogManager.getLoggerRepository().setThreshold(Level.OFF);
+    /* Simulated time does not follow the wall clock the failure detector runs on */
+    ChordConfig.PHI_THRESHOLD = Double.MAX_VALUE;
+    ChordNode.setFingerExecutor(new CallerRunsExecutorService());
+    ChordNode.setRttClock(InMemoryTransport::simulatedNanos);
+
+    new ChordSimulation().run();
+    System.exit(0);
+  }
+
+  private void run() throws UnknownHostException {
+    ChordRMIUtils.setTransport(transport);
+    out.println("Simulating " + NODES + " machines x " + VIRTUAL_NODES + " virtual nodes, rtt "
+                + RTT_MICROS + "us, loss " + LOSS + ", churn " + CHURN + ", seed " + SEED);
+    out.println("Failure detection is off (PHI_THRESHOLD is Double.MAX_VALUE), failed nodes are "
+                + "only noticed by calls to them failing");
+
+    long start = System.currentTimeMillis();
+    int joinRounds = 0;
+    for (int i = 1; i <= NODES; i++) {
+      addMachine();
+      if (JOINS_PER_ROUND > 0 && i % JOINS_PER_ROUND == 0 && i < NODES) {
+        stabilizationRound();
+        joinRounds++;
+      }
+    }
+    out.println("All nodes joined in " + (System.currentTimeMillis() - start) + " ms over "
+                + joinRounds + " rounds, " + joinRetries + " joins retried");
+
+    converge();
+    report("Stabilized ring", lookups(LOOKUPS));
+    reportBatchLookup(LOOKUPS);
+    reportLoad();
+
+    if (CHURN > 0) {
+      LookupStats churnStats = new LookupStats();
+      int replaced = 0;
+      for (int round = 1; round <= CHURN_ROUNDS; round++) {
+        replaced += churn();
+        stabilizationRound();
+        lookups(Math.max(1, LOOKUPS / CHURN_ROUNDS), churnStats);
+      }
+      out.println();
+      out.println(replaced + " machines replaced over " + CHURN_ROUNDS + " churn rounds");
+      report("Under churn", churnStats);
+      converge();
+    }
+    out.println();
+    out.println("Transport: " + transport.getCalls() + " calls, " + transport.getFailedCalls()
+                + " failed");
+  }
+
+  /**
+   * Starts a new machine with all its virtual nodes and joins them through a random live node. A
+   * node whose join call is lost would stay a ring of its own, so like an operator would, the join
+   * is retried through another node.
+   */
+  private void addMachine() throws UnknownHostException {
+    int m = ++machinesCreated;
+    InetAddress ip = InetAddress.getByAddress(new byte[]{10, (byte) (m >> 16), (byte) (m >> 8), (byte) m});
+
+    List<ChordNode> vnodes = new ArrayList<>();
+    for (int v = 0; v < VIRTUAL_NODES; v++) {
+      ChordNode node = new ChordNode(ip, v, new UpcallDispatcher(upcallExecutor));
+      transport.register(node);
+      for (int attempt = 0; attempt < JOIN_ATTEMPTS; attempt++) {
+        ArrayList<InetAddress> bootstrap = new ArrayList<>();
+        bootstrap.add(nodes.isEmpty() ? ip : nodes.get(random.nextInt(nodes.size())).selfIP);
+        try {
+          if (node.join(bootstrap)) {
+            break;
+          }
+        } catch (RemoteException e) {
+          joinRetries++;
+        }
+      }
+      vnodes.add(node);
+      nodes.add(node);
+      ring.put(node.selfChordID, node.selfChordID);
+    }
+    machines.put(ip, vnodes);
+  }
+
+  /* Crashes every machine with probability CHURN, or has it leave if GRACEFUL_LEAVE is set, and
+  starts as many new ones. Returns the count */
+  private int churn() throws UnknownHostException {
+    List<InetAddress> victims = new ArrayList<>();
+    for (InetAddress ip : machines.keySet()) {
+      if (random.nextDouble() < CHURN && machines.size() - victims.size() > 2) {
+        victims.add(ip);
+      }
+    }
+    for (InetAddress ip : victims) {
+      for (ChordNode node : machines.remove(ip)) {
+        if (GRACEFUL_LEAVE) {
+          node.leave();
+        }
+        transport.crash(node.selfChordID);
+        nodes.remove(node);
+        ring.remove(node.selfChordID);
+      }
+    }
+    for (int i = 0; i < victims.size(); i++) {
+      addMachine();
+    }
+    return victims.size();
+  }
+
+  /* One stabilize and fixFingers on every live node, in random order */
+  private void stabilizationRound() {
+    List<ChordNode> order = new ArrayList<>(nodes);
+    Collections.shuffle(order, random);
+    for (ChordNode node : order) {
+      try {
+        node.stabilize();
+        node.fixFingers();
+      } catch (RemoteException e) {
+        /* Node tries again next round */
+      }
+    }
+  }
+
+  /**
+   * Runs rounds until all successors and predecessors are right and at least FINGER_TARGET of the
+   * fingers are, or MAX_ROUNDS have passed.
+   */
+  private void converge() {
+    out.println();
+    out.println("round  ring-correct  fingers-correct  ms");
+    int ringRound = 0;
+    int fingerRound = 0;
+    for (int round = 1; round <= MAX_ROUNDS; round++) {
+      long start = System.currentTimeMillis();
+      stabilizationRound();
+      long millis = System.currentTimeMillis() - start;
+      double ringCorrect = ringCorrectFraction();
+      double fingersCorrect = fingerCorrectFraction();
+      out.printf("%5d  %11.2f%%  %14.2f%%  %d%n", round, 100 * ringCorrect, 100 * fingersCorrect,
+                 millis);
+      if (ringRound == 0 && ringCorrect == 1.0) {
+        ringRound = round;
+      }
+      if (fingerRound == 0 && fingersCorrect >= FINGER_TARGET) {
+        fingerRound = round;
+      }
+      if (ringCorrect == 1.0 && fingersCorrect >= FINGER_TARGET) {
+        out.println("Ring correct after " + ringRound + " rounds, fingers after " + fingerRound
+                    + " rounds, about " + round * ChordConfig.STABILIZER_PERIOD
+                    + " s at the configured period");
+        return;
+      }
+    }
+    out.println("Not converged after " + MAX_ROUNDS + " rounds");
+  }
+
+  private ChordID<InetAddress> trueSuccessor(Hash id) {
+    Map.Entry<Hash, ChordID<InetAddress>> entry = ring.ceilingEntry(id);
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  private ChordID<InetAddress> trueNextNode(Hash id) {
+    Map.Entry<Hash, ChordID<InetAddress>> entry = ring.higherEntry(id);
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  private ChordID<InetAddress> truePreviousNode(Hash id) {
+    Map.Entry<Hash, ChordID<InetAddress>> entry = ring.lowerEntry(id);
+    return entry != null ? entry.getValue() : ring.lastEntry().getValue();
+  }
+
+  /* Fraction of nodes whose successor and predecessor are the right ones */
+  private double ringCorrectFraction() {
+    int correct = 0;
+    for (ChordNode node : nodes) {
+      RoutingState state = node.getRoutingState();
+      if (state.getSuccessor().equals(trueNextNode(node.selfChordID))
+          && state.predecessor.equals(truePreviousNode(node.selfChordID))) {
+        correct++;
+      }
+    }
+    return (double) correct / nodes.size();
+  }
+
+  /* Fraction of finger entries pointing to the node actually responsible for their start */
+  private double fingerCorrectFraction() {
+    long correct = 0;
+    long total = 0;
+    for (ChordNode node : nodes) {
+      FingerTable fingerTable = node.getRoutingState().fingerTable;
+      for (int i = 0; i < FingerTable.MAX_SIZE; i++) {
+        FingerTableEntry entry = fingerTable.getEntry(i);
+        if (entry.responsibleNodeID.equals(trueSuccessor(entry.hashRangeStart))) {
+          correct++;
+        }
+        total++;
+      }
+    }
+    return (double) correct / total;
+  }
+
+  private LookupStats lookups(int count) {
+    LookupStats stats = new LookupStats();
+    lookups(count, stats);
+    return stats;
+  }
+
+  /* Looks up count random keys, each from a random live node, and checks every answer */
+  private void lookups(int count, LookupStats stats) {
+    for (int i = 0; i < count; i++) {
+      ChordNode node = nodes.get(random.nextInt(nodes.size()));
+      ChordID<String> key = new ChordID<>("key-" + random.nextLong());
+      InMemoryTransport.takeSimulatedMicros();
+      LookupResult result = null;
+      try {
+        result = node.lookup(key);
+      } catch (RemoteException e) {
+        /* Counted as failed below */
+      }
+      long micros = InMemoryTransport.takeSimulatedMicros();
+      if (result == null || result.getNodeID() == null) {
+        stats.failed++;
+        continue;
+      }
+      if (result.getNodeID().equals(trueSuccessor(key))) {
+        stats.correct++;
+      } else {
+        stats.wrong++;
+      }
+      stats.hops[Math.min(result.getHops(), stats.hops.length - 1)]++;
+      stats.latencyMicros.record(micros);
+    }
+  }
+
+  private void report(String title, LookupStats stats) {
+    out.println();
+    out.printf("%s: %d lookups, %.2f%% correct, %.2f%% wrong, %.2f%% failed%n", title,
+               stats.total(), 100.0 * stats.correct / stats.total(),
+               100.0 * stats.wrong / stats.total(), 100.0 * stats.failed / stats.total());
+    int answered = stats.correct + stats.wrong;
+    long hopSum = 0;
+    for (int h = 0; h < stats.hops.length; h++) {
+      hopSum += (long) h * stats.hops[h];
+    }
+    out.printf("hops: mean %.2f (log2 of ring size %.2f)%n", answered == 0 ? 0.0 : (double) hopSum / answered,
+               Math.log(nodes.size()) / Math.log(2));
+    for (int h = 0; h < stats.hops.length; h++) {
+      if (stats.hops[h] > 0) {
+        out.printf("  %2d hops  %6.2f%%%n", h, 100.0 * stats.hops[h] / answered);
+      }
+    }
+    out.printf("simulated latency: mean %.1f ms, p50 <= %.1f ms, p99 <= %.1f ms%n",
+               stats.latencyMicros.getMean() / 1000, stats.latencyMicros.getPercentile(0.5) / 1000.0,
+               stats.latencyMicros.getPercentile(0.99) / 1000.0);
+  }
+
+  /* Looks up count random keys from one random node in a single batched traversal. Draws from its
+  own random, so that the runs that follow do not change with it */
+  private void reportBatchLookup(int count) {
+    Random batchRandom = new Random(SEED);
+    ChordNode node = nodes.get(batchRandom.nextInt(nodes.size()));
+    List<Hash> keys = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      keys.add(new ChordID<>("key-" + batchRandom.nextLong()));
+    }
+    Collections.sort(keys);
+    long callsBefore = transport.getCalls();
+    InMemoryTransport.takeSimulatedMicros();
+    List<ChordID<InetAddress>> owners = null;
+    try {
+      owners = node.getSuccessors(node.selfChordID, keys, 0);
+    } catch (RemoteException e) {
+      /* Counted as failed below */
+    }
+    long micros = InMemoryTransport.takeSimulatedMicros();
+    int correct = 0;
+    int wrong = 0;
+    for (int i = 0; owners != null && i < count; i++) {
+      if (owners.get(i) == null) {
+        continue;
+      }
+      if (owners.get(i).equals(trueSuccessor(keys.get(i)))) {
+        correct++;
+      } else {
+        wrong++;
+      }
+    }
+    out.println();
+    out.printf("Batched lookup: %d keys, %.2f%% correct, %.2f%% wrong, %.2f%% failed, %d calls, "
+               + "%.1f ms simulated%n", count, 100.0 * correct / count, 100.0 * wrong / count,
+               100.0 * (count - correct - wrong) / count, transport.getCalls() - callsBefore,
+               micros / 1000.0);
+  }
+
+  /* Places KEYS keys on their true owners and reports how evenly machines are loaded */
+  private void reportLoad() {
+    Map<InetAddress, Integer> load = new HashMap<>();
+    for (InetAddress ip : machines.keySet()) {
+      load.put(ip, 0);
+    }
+    for (int i = 0; i < KEYS; i++) {
+      InetAddress owner = trueSuccessor(new ChordID<>("object-" + i)).getKey();
+      load.put(owner, load.get(owner) + 1);
+    }
+    List<Integer> loads = new ArrayList<>(load.values());
+    Collections.sort(loads);
+    double mean = (double) KEYS / loads.size();
+    double variance = 0;
+    for (int l : loads) {
+      variance += (l - mean) * (l - mean);
+    }
+    variance /= loads.size();
+    out.println();
+    out.printf("Key load over %d machines: mean %.1f, min %d, median %d, p99 %d, max %d%n",
+               loads.size(), mean, loads.get(0), loads.get(loads.size() / 2),
+               loads.get((int) Math.min(loads.size() - 1, Math.ceil(0.99 * loads.size()) - 1)),
+               loads.get(loads.size() - 1));
+    out.printf("max/mean %.2f, coefficient of variation %.2f, %d machines own no key%n",
+               loads.get(loads.size() - 1) / mean, Math.sqrt(variance) / mean,
+               Collections.frequency(loads, 0));
+  }
+}
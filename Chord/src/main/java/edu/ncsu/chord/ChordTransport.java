@@ -0,0 +1,17 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+
+/**
+ * Carries calls from a chord node to other chord nodes. Normally that is RMI or the NIO transport,
+ * set up by ChordRMIUtils; a ChordTransport installed with ChordRMIUtils.setTransport replaces both,
+ * e.g. to run a whole ring inside one JVM.
+ */
+interface ChordTransport {
+
+  /* Returns ChordOperations of nodeID, or null if that node can not be reached at all */
+  ChordOperations getNodeObject(ChordID<InetAddress> nodeID);
+
+  /* Called when a call on the object returned for nodeID has failed */
+  void invalidateNodeObject(ChordID<InetAddress> nodeID);
+}
@@ -0,0 +1,254 @@
+package edu.ncsu.chord;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of ChordOperations calls for the NIO transport.
+ *
+ * Every frame is a 4 byte length followed by the frame body. A request body is
+ * [requestId:8][opcode:1][virtualIndex:4][arguments] and a response body is
+ * [requestId:8][status:1][result or error message]. Hashes are sent as their fixed width words
+ * and are never hashed again on the receiving side; strings are length prefixed UTF-8.
+ */
+final class ChordWireCodec {
+
+  /* Opcodes, one for each ChordOperations method */
+  static final byte OP_GET_SUCCESSOR = 1;
+  static final byte OP_FIND_SUCCESSOR_OF = 2;
+  static final byte OP_GET_PREDECESSOR = 3;
+  static final byte OP_FIND_PREDECESSOR_OF = 4;
+  static final byte OP_GET_CLOSEST_PRECEDING_FINGER = 5;
+  static final byte OP_FIND_SUCCESSOR = 6;
+  static final byte OP_GET_SUCCESSORS = 7;
+  static final byte OP_GET_SUCCESSOR_LIST = 8;
+  static final byte OP_NOTIFY = 9;
+  static final byte OP_NOTIFY_LEAVE = 10;
+  static final byte OP_GET_FINGER_NODES = 11;
+  static final byte OP_EXCHANGE_MEMBERSHIP = 12;
+
+  static final byte STATUS_OK = 0;
+  static final byte STATUS_ERROR = 1;
+
+  /* Largest frame body accepted, anything bigger means a corrupt stream */
+  static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  /* Tags written in front of every Hash */
+  private static final byte TAG_NULL = 0;
+  private static final byte TAG_HASH = 1;
+  private static final byte TAG_NODE_ID = 2;
+  private static final byte TAG_KEY_ID = 3;
+
+  private ChordWireCodec() {
+  }
+
+  static void writeHash(DataOutputStream out, Hash hash) throws IOException {
+    if (hash == null) {
+      out.writeByte(TAG_NULL);
+      return;
+    }
+    if (hash instanceof ChordID) {
+      ChordID<?> id = (ChordID<?>) hash;
+      if (id.getKey() instanceof InetAddress) {
+        out.writeByte(TAG_NODE_ID);
+        byte[] address = ((InetAddress) id.getKey()).getAddress();
+        out.writeByte(address.length);
+        out.write(address);
+      } else if (id.getKey() instanceof String) {
+        out.writeByte(TAG_KEY_ID);
+        writeString(out, (String) id.getKey());
+      } else {
+        throw new IOException("Unsupported ChordID key type " + id.getKey().getClass());
+      }
+      out.writeInt(id.getVirtualIndex());
+    } else if (hash instanceof SHA256Hash) {
+      out.writeByte(TAG_HASH);
+    } else {
+      throw new IOException("Unsupported Hash type " + hash.getClass());
+    }
+    SHA256Hash words = (SHA256Hash) hash;
+    out.writeByte(words.getBits());
+    out.writeLong(words.getHighWord());
+    out.writeLong(words.getMidWord());
+    out.writeLong(words.getLowWord());
+  }
+
+  static Hash readHash(ByteBuffer in) throws IOException {
+    byte tag = in.get();
+    if (tag == TAG_NULL) {
+      return null;
+    }
+    Object key = null;
+    int virtualIndex = 0;
+    if (tag == TAG_NODE_ID) {
+      byte[] address = new byte[in.get()];
+      in.get(address);
+      try {
+        key = InetAddress.getByAddress(address);
+      } catch (UnknownHostException e) {
+        throw new IOException("Bad address length " + address.length, e);
+      }
+      virtualIndex = in.getInt();
+    } else if (tag == TAG_KEY_ID) {
+      key = readString(in);
+      virtualIndex = in.getInt();
+    } else if (tag != TAG_HASH) {
+      throw new IOException("Unknown hash tag " + tag);
+    }
+    int bits = in.get() & 0xFF;
+    long high = in.getLong();
+    long mid = in.getLong();
+    long low = in.getLong();
+    if (tag == TAG_HASH) {
+      return new SHA256Hash(high, mid, low, bits);
+    }
+    return new ChordID<>(key, virtualIndex, high, mid, low, bits);
+  }
+
+  static void writeNodeID(DataOutputStream out, ChordID<InetAddress> nodeID) throws IOException {
+    writeHash(out, nodeID);
+  }
+
+  @SuppressWarnings("unchecked")
+  static ChordID<InetAddress> readNodeID(ByteBuffer in) throws IOException {
+    Hash hash = readHash(in);
+    if (hash != null && !(hash instanceof ChordID && ((ChordID<?>) hash).getKey() instanceof InetAddress)) {
+      throw new IOException("Expected a node ID, got " + hash);
+    }
+    return (ChordID<InetAddress>) hash;
+  }
+
+  static void writeNodeIDs(DataOutputStream out, List<ChordID<InetAddress>> nodeIDs)
+      throws IOException {
+    out.writeInt(nodeIDs.size());
+    for (ChordID<InetAddress> nodeID : nodeIDs) {
+      writeNodeID(out, nodeID);
+    }
+  }
+
+  static List<ChordID<InetAddress>> readNodeIDs(ByteBuffer in) throws IOException {
+    int size = in.getInt();
+    List<ChordID<InetAddress>> nodeIDs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      nodeIDs.add(readNodeID(in));
+    }
+    return nodeIDs;
+  }
+
+  static void writeHashes(DataOutputStream out, List<Hash> hashes) throws IOException {
+    out.writeInt(hashes.size());
+    for (Hash hash : hashes) {
+      writeHash(out, hash);
+    }
+  }
+
+  static List<Hash> readHashes(ByteBuffer in) throws IOException {
+    int size = in.getInt();
+    List<Hash> hashes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      hashes.add(readHash(in));
+    }
+    return hashes;
+  }
+
+  static void writeLookupResult(DataOutputStream out, LookupResult result) throws IOException {
+    out.writeBoolean(result != null);
+    if (result != null) {
+      writeNodeID(out, result.getNodeID());
+      out.writeInt(result.getHops());
+      out.writeBoolean(result.getPredecessorID() != null);
+      if (result.getPredecessorID() != null) {
+        writeNodeID(out, result.getPredecessorID());
+      }
+    }
+  }
+
+  static LookupResult readLookupResult(ByteBuffer in) throws IOException {
+    if (in.get() == 0) {
+      return null;
+    }
+    ChordID<InetAddress> nodeID = readNodeID(in);
+    int hops = in.getInt();
+    ChordID<InetAddress> predecessorID = in.get() == 0 ? null : readNodeID(in);
+    return new LookupResult(nodeID, hops, predecessorID);
+  }
+
+  static void writeMembershipUpdates(DataOutputStream out, List<MembershipUpdate> updates)
+      throws IOException {
+    out.writeInt(updates.size());
+    for (MembershipUpdate update : updates) {
+      writeNodeID(out, update.getNodeID());
+      out.writeLong(update.getVersion());
+      out.writeBoolean(update.isAlive());
+    }
+  }
+
+  static List<MembershipUpdate> readMembershipUpdates(ByteBuffer in) throws IOException {
+    int size = in.getInt();
+    List<MembershipUpdate> updates = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      ChordID<InetAddress> nodeID = readNodeID(in);
+      long version = in.getLong();
+      updates.add(new MembershipUpdate(nodeID, version, in.get() != 0));
+    }
+    return updates;
+  }
+
+  static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /* Non negative int in 7 bit groups, lowest first, so that small values take a single byte */
+  static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length int");
+  }
+
+  /* Strings with a variable length prefix, for the compact Java serialized form of IDs */
+  static void writeCompactString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  static String readCompactString(DataInput in) throws IOException {
+    int length = readVarInt(in);
+    if (length < 0 || length > MAX_FRAME_SIZE) {
+      throw new IOException("Bad string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -7,5 +7,8 @@ public enum Event {
   SUCCESSOR_FAILED,
   NEW_SUCCESSOR,
   PREDECESSOR_FAILED,
-  NEW_PREDECESSOR
+  NEW_PREDECESSOR,
+  /* Neighbour left the ring gracefully and has already handed its keys over */
+  SUCCESSOR_LEFT,
+  PREDECESSOR_LEFT
 }
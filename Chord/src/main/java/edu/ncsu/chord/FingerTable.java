@@ -6,6 +6,8 @@ import java.io.Serializable;
 import java.net.InetAddress;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by amit on 13/2/17.
@@ -19,21 +21,32 @@ class FingerTable {
   public final static int MAX_SIZE = ChordConfig.CHORD_ID_MAX_BITS;
 
   /* Actual finger table. First entry is known as 'successor'
-  i'th entry is calculated as ChordID.id + 2^(i); */
-  private ArrayList<FingerTableEntry> table;
+  i'th entry is calculated as ChordID.id + 2^(i). Never modified once the table is built, changed
+  tables are built from copyEntries() */
+  private final List<FingerTableEntry> table;
 
   private final static Logger logger = Logger.getLogger(FingerTable.class);
 
   public FingerTable(ChordID<InetAddress> selfChordID) {
-    table = new ArrayList<>(MAX_SIZE);
+    List<FingerTableEntry> entries = new ArrayList<>(MAX_SIZE);
     for (int i = 0; i < MAX_SIZE; i++) {
-      table.add(new FingerTableEntry(i, selfChordID.next(i), selfChordID.next(i + 1), selfChordID));
+      entries.add(new FingerTableEntry(i, selfChordID.next(i), selfChordID.next(i + 1), selfChordID));
     }
+    table = Collections.unmodifiableList(entries);
+  }
+
+  FingerTable(List<FingerTableEntry> entries) {
+    table = Collections.unmodifiableList(new ArrayList<>(entries));
   }
 
   public FingerTableEntry getEntry(int index) {
     return table.get(index);
   }
+
+  /* Modifiable copy of all entries, to build a changed table from */
+  List<FingerTableEntry> copyEntries() {
+    return new ArrayList<>(table);
+  }
   public String toSimpleString() {
 	    StringBuilder tableData = new StringBuilder();
 	    for (int i = 0; i < table.size(); i++) {
@@ -10,26 +10,46 @@ import java.net.InetAddress;
 class FingerTableEntry {
 
   /* Index number of this entry in the table */
-  int fingerIndex = -1;
+  final int fingerIndex;
 
   /* The range which this entry covers hashRangeStart is included and hashRangeEnd is excluded */
-  Hash hashRangeStart = null;
-  Hash hashRangeEnd = null;
+  final Hash hashRangeStart;
+  final Hash hashRangeEnd;
 
   /* Successor ID for corresponding entry ID */
-  ChordID<InetAddress> responsibleNodeID = null;
+  final ChordID<InetAddress> responsibleNodeID;
+
+  /* Lowest latency node known to lie in this entry's range. Any node in the range is a correct
+  finger, so routing may use it instead of responsibleNodeID. null if no better node is known */
+  final ChordID<InetAddress> proximityNodeID;
 
   public FingerTableEntry(int fingerIndex, Hash hashRangeStart, Hash hashRangeEnd) {
+    this(fingerIndex, hashRangeStart, hashRangeEnd, null);
+  }
+
+  public FingerTableEntry(int fingerIndex, Hash hashRangeStart, Hash hashRangeEnd,
+			  ChordID<InetAddress> responsibleNodeID) {
+    this(fingerIndex, hashRangeStart, hashRangeEnd, responsibleNodeID, null);
+  }
+
+  private FingerTableEntry(int fingerIndex, Hash hashRangeStart, Hash hashRangeEnd,
+                           ChordID<InetAddress> responsibleNodeID,
+                           ChordID<InetAddress> proximityNodeID) {
     this.fingerIndex = fingerIndex;
     this.hashRangeStart = hashRangeStart;
     this.hashRangeEnd = hashRangeEnd;
-    this.responsibleNodeID = null;
+    this.responsibleNodeID = responsibleNodeID;
+    this.proximityNodeID = proximityNodeID;
   }
 
-  public FingerTableEntry(int fingerIndex, Hash hashRangeStart, Hash hashRangeEnd,
-			  ChordID responsibleNodeID) {
-    this(fingerIndex, hashRangeStart, hashRangeEnd);
-    this.responsibleNodeID = responsibleNodeID;
+  FingerTableEntry withResponsibleNodeID(ChordID<InetAddress> responsibleNodeID) {
+    return new FingerTableEntry(fingerIndex, hashRangeStart, hashRangeEnd, responsibleNodeID,
+                                proximityNodeID);
+  }
+
+  FingerTableEntry withProximityNodeID(ChordID<InetAddress> proximityNodeID) {
+    return new FingerTableEntry(fingerIndex, hashRangeStart, hashRangeEnd, responsibleNodeID,
+                                proximityNodeID);
   }
   
   public String toSimpleString() {
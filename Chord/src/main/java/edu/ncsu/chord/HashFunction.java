@@ -0,0 +1,127 @@
+package edu.ncsu.chord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Functions hashing node addresses and object keys onto the ring. Every node and client of a
+ * cluster must use the same one, since a key is looked up at the ID its hash gives.
+ * SHA256 - SHA-256 digest of the UTF-8 encoded input. Its first bits / 8 + 1 bytes are read as a
+ * big endian number of which IDs keep the low bits, as they always have.
+ * MURMUR3_UTF16 - MurmurHash3 x64 128 with seed 0 of the UTF-16LE encoded input, which spares
+ * encoding the string. Libraries mostly hash strings as UTF-8, so their IDs differ; Guava's
+ * murmur3_128().hashBytes(input.getBytes(UTF_16LE)) gives the same ones. Several times faster
+ * than SHA256 and spreads keys just as evenly, but IDs wider than 128 bits carry no more than
+ * 128 bits of entropy.
+ */
+enum HashFunction {
+
+  SHA256 {
+    /* MessageDigest.getInstance is slow and digests are not thread safe, so each thread keeps one */
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+    });
+
+    @Override
+    void hash(String input, int bits, long[] words) {
+      byte[] hashBytes = digest.get().digest(input.getBytes(StandardCharsets.UTF_8));
+      /* Read first bits / 8 + 1 bytes as a big endian number, caller keeps its low bits */
+      long low = 0, mid = 0, high = 0;
+      for (int i = 0; i < bits / 8 + 1; i++) {
+        high = (high << 8) | (mid >>> 56);
+        mid = (mid << 8) | (low >>> 56);
+        low = (low << 8) | (hashBytes[i] & 0xFF);
+      }
+      words[0] = low;
+      words[1] = mid;
+      words[2] = high;
+    }
+  },
+
+  MURMUR3_UTF16 {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    @Override
+    void hash(String input, int bits, long[] words) {
+      /* Each 16 byte block of the UTF-16LE encoding is 8 chars, read as two little endian words
+      of 4 chars each */
+      int length = input.length();
+      int blocks = length / 8;
+      long h1 = 0, h2 = 0;
+      for (int block = 0; block < blocks; block++) {
+        int offset = block * 8;
+        long k1 = chars(input, offset, 4);
+        long k2 = chars(input, offset + 4, 4);
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+      }
+      int tail = length - blocks * 8;
+      if (tail > 4) {
+        h2 ^= mixK2(chars(input, blocks * 8 + 4, tail - 4));
+      }
+      if (tail > 0) {
+        h1 ^= mixK1(chars(input, blocks * 8, Math.min(tail, 4)));
+      }
+
+      h1 ^= length * 2L;
+      h2 ^= length * 2L;
+      h1 += h2;
+      h2 += h1;
+      h1 = fmix64(h1);
+      h2 = fmix64(h2);
+      h1 += h2;
+      h2 += h1;
+
+      words[0] = h1;
+      words[1] = h2;
+      /* Only IDs wider than 128 bits use the high word, spread the same 128 bits into it */
+      words[2] = bits > 128 ? fmix64(h1 ^ Long.rotateLeft(h2, 32)) : 0;
+    }
+
+    /* count chars starting at offset as a little endian word */
+    private long chars(String input, int offset, int count) {
+      long word = 0;
+      for (int i = count - 1; i >= 0; i--) {
+        word = (word << 16) | input.charAt(offset + i);
+      }
+      return word;
+    }
+
+    private long mixK1(long k1) {
+      k1 *= C1;
+      k1 = Long.rotateLeft(k1, 31);
+      return k1 * C2;
+    }
+
+    private long mixK2(long k2) {
+      k2 *= C2;
+      k2 = Long.rotateLeft(k2, 33);
+      return k2 * C1;
+    }
+
+    private long fmix64(long k) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
+    }
+  };
+
+  /**
+   * Hashes input into words, lowest 64 bits first. At least the low bits bits of the result are
+   * filled in, the caller masks off the rest.
+   */
+  abstract void hash(String input, int bits, long[] words);
+}
@@ -0,0 +1,210 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ChordTransport connecting ChordNodes of one JVM by direct method calls. Calls can be made to
+ * fail at random (loss) and nodes can be crashed; a crashed node fails every call just like a dead
+ * peer behind a cached RMI stub. Latency is not slept: every call adds a sampled round trip time to
+ * a per thread simulated clock, so thousands of nodes run at full speed and the caller can still
+ * tell how long a lookup would have taken.
+ */
+class InMemoryTransport implements ChordTransport {
+
+  /* Nodes that are up, by ID */
+  private final ConcurrentHashMap<ChordID<InetAddress>, ChordNode> nodes = new ConcurrentHashMap<>();
+
+  /* One link per node ever registered, reused for every call to it */
+  private final ConcurrentHashMap<ChordID<InetAddress>, Link> links = new ConcurrentHashMap<>();
+
+  private final long meanRttMicros;
+
+  private final double lossRate;
+
+  private final Random random;
+
+  private final LongAdder calls = new LongAdder();
+
+  private final LongAdder failedCalls = new LongAdder();
+
+  /* Per thread simulated time: since last takeSimulatedMicros, and in total */
+  private static final ThreadLocal<long[]> simulatedMicros =
+      ThreadLocal.withInitial(() -> new long[2]);
+
+  /**
+   * @param meanRttMicros mean simulated round trip time, each call takes uniformly between half and
+   *                      one and a half times this
+   * @param lossRate      probability that a call fails as if the network had dropped it
+   */
+  InMemoryTransport(long meanRttMicros, double lossRate, long seed) {
+    this.meanRttMicros = meanRttMicros;
+    this.lossRate = lossRate;
+    this.random = new Random(seed);
+  }
+
+  void register(ChordNode node) {
+    nodes.put(node.selfChordID, node);
+  }
+
+  /* Node stops answering, without telling anyone */
+  void crash(ChordID<InetAddress> nodeID) {
+    nodes.remove(nodeID);
+  }
+
+  boolean isUp(ChordID<InetAddress> nodeID) {
+    return nodes.containsKey(nodeID);
+  }
+
+  long getCalls() {
+    return calls.sum();
+  }
+
+  long getFailedCalls() {
+    return failedCalls.sum();
+  }
+
+  /* Simulated time spent in calls made by the current thread since last call of this method */
+  static long takeSimulatedMicros() {
+    long[] elapsed = simulatedMicros.get();
+    long micros = elapsed[0];
+    elapsed[0] = 0;
+    return micros;
+  }
+
+  /* Simulated clock of the current thread in nanoseconds, advanced only by calls it makes */
+  static long simulatedNanos() {
+    return TimeUnit.MICROSECONDS.toNanos(simulatedMicros.get()[1]);
+  }
+
+  @Override
+  public ChordOperations getNodeObject(ChordID<InetAddress> nodeID) {
+    /* Like a registry lookup, fails for a node that is not up */
+    if (nodeID == null || !nodes.containsKey(nodeID)) {
+      return null;
+    }
+    return links.computeIfAbsent(nodeID, Link::new);
+  }
+
+  @Override
+  public void invalidateNodeObject(ChordID<InetAddress> nodeID) {
+  }
+
+  /**
+   * Target of a call from callerID to nodeID that is about to be delivered, or RemoteException if
+   * the call fails. Calls between nodes of one machine take no time and are never lost.
+   */
+  private ChordNode deliver(ChordID<InetAddress> nodeID, ChordID<InetAddress> callerID)
+      throws RemoteException {
+    calls.increment();
+    boolean local = callerID != null && callerID.getKey().equals(nodeID.getKey());
+    if (!local && meanRttMicros > 0) {
+      long rtt = meanRttMicros / 2 + (long) (random.nextDouble() * meanRttMicros);
+      long[] elapsed = simulatedMicros.get();
+      elapsed[0] += rtt;
+      elapsed[1] += rtt;
+    }
+    ChordNode node = nodes.get(nodeID);
+    if (node == null) {
+      failedCalls.increment();
+      throw new RemoteException(nodeID + " is down");
+    }
+    if (!local && lossRate > 0 && random.nextDouble() < lossRate) {
+      failedCalls.increment();
+      throw new RemoteException("Call to " + nodeID + " was lost");
+    }
+    return node;
+  }
+
+  /* Stands in for the RMI stub of one node */
+  private class Link implements ChordOperations {
+
+    private final ChordID<InetAddress> nodeID;
+
+    Link(ChordID<InetAddress> nodeID) {
+      this.nodeID = nodeID;
+    }
+
+    @Override
+    public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID, Hash id)
+        throws RemoteException {
+      return deliver(nodeID, callerID).getSuccessor(callerID, id);
+    }
+
+    @Override
+    public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID) throws RemoteException {
+      return deliver(nodeID, callerID).getSuccessor(callerID);
+    }
+
+    @Override
+    public List<ChordID<InetAddress>> getSuccessorList(ChordID<InetAddress> callerID)
+        throws RemoteException {
+      return deliver(nodeID, callerID).getSuccessorList(callerID);
+    }
+
+    @Override
+    public List<ChordID<InetAddress>> getFingerNodes(ChordID<InetAddress> callerID)
+        throws RemoteException {
+      return deliver(nodeID, callerID).getFingerNodes(callerID);
+    }
+
+    @Override
+    public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID, Hash id)
+        throws RemoteException {
+      return deliver(nodeID, callerID).getPredecessor(callerID, id);
+    }
+
+    @Override
+    public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID)
+        throws RemoteException {
+      return deliver(nodeID, callerID).getPredecessor(callerID);
+    }
+
+    @Override
+    public ChordID<InetAddress> getClosestPrecedingFinger(ChordID<InetAddress> callerID, Hash id)
+        throws RemoteException {
+      return deliver(nodeID, callerID).getClosestPrecedingFinger(callerID, id);
+    }
+
+    @Override
+    public LookupResult findSuccessor(ChordID<InetAddress> callerID, Hash id, int hops)
+        throws RemoteException {
+      return deliver(nodeID, callerID).findSuccessor(callerID, id, hops);
+    }
+
+    @Override
+    public List<ChordID<InetAddress>> getSuccessors(ChordID<InetAddress> callerID, List<Hash> ids,
+                                                    int hops) throws RemoteException {
+      return deliver(nodeID, callerID).getSuccessors(callerID, ids, hops);
+    }
+
+    @Override
+    public void notify(ChordID<InetAddress> callerID, ChordID<InetAddress> id)
+        throws RemoteException {
+      deliver(nodeID, callerID).notify(callerID, id);
+    }
+
+    @Override
+    public void notifyLeave(ChordID<InetAddress> callerID, ChordID<InetAddress> leavingID,
+                            ChordID<InetAddress> predecessor, ChordID<InetAddress> successor)
+        throws RemoteException {
+      deliver(nodeID, callerID).notifyLeave(callerID, leavingID, predecessor, successor);
+    }
+
+    @Override
+    public List<MembershipUpdate> exchangeMembership(ChordID<InetAddress> callerID,
+                                                     List<MembershipUpdate> updates,
+                                                     boolean fullTable) throws RemoteException {
+      return deliver(nodeID, callerID).exchangeMembership(callerID, updates, fullTable);
+    }
+
+    public String toString() {
+      return "Link" + nodeID;
+    }
+  }
+}
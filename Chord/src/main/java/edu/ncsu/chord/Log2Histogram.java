@@ -0,0 +1,73 @@
+package edu.ncsu.chord;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values with power of two buckets: bucket 0 counts zeros and
+ * bucket b counts values in [2^(b-1), 2^b). Recording is a couple of LongAdder increments, so it
+ * can sit on every call path; percentiles are only as precise as the bucket they fall in.
+ */
+class Log2Histogram {
+
+  private static final int BUCKETS = 64;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder sum = new LongAdder();
+
+  Log2Histogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  void record(long value) {
+    value = Math.max(0, value);
+    buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+    count.increment();
+    sum.add(value);
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /* Upper bound of the bucket holding the q'th quantile, 0 < q <= 1 */
+  long getPercentile(double q) {
+    long[] counts = getBuckets();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    long rank = (long) Math.ceil(q * total);
+    long seen = 0;
+    for (int b = 0; b < counts.length; b++) {
+      seen += counts[b];
+      if (seen >= rank && seen > 0) {
+        return b == 0 ? 0 : b >= 63 ? Long.MAX_VALUE : (1L << b) - 1;
+      }
+    }
+    return 0;
+  }
+
+  /* Count of every bucket up to the highest non empty one */
+  long[] getBuckets() {
+    long[] counts = new long[BUCKETS];
+    int last = -1;
+    for (int b = 0; b < BUCKETS; b++) {
+      counts[b] = buckets[b].sum();
+      if (counts[b] != 0) {
+        last = b;
+      }
+    }
+    return Arrays.copyOf(counts, last + 1);
+  }
+}
@@ -0,0 +1,16 @@
+package edu.ncsu.chord;
+
+/**
+ * Routing modes used to find the node responsible for an id.
+ * ITERATIVE - The node starting the lookup calls every hop on the path itself.
+ * RECURSIVE - Every hop forwards the lookup to its closest preceding finger. The answer comes back
+ * through every hop of the path, since each call waits for the one it made.
+ * ONE_HOP - Every node keeps the full membership of the ring, spread by gossip, and picks the owner
+ * of an id from it without any hop. Lookups are routed ITERATIVE while the picked owner is
+ * suspected to have failed.
+ */
+enum LookupMode {
+  ITERATIVE,
+  RECURSIVE,
+  ONE_HOP
+}
@@ -0,0 +1,48 @@
+package edu.ncsu.chord;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+
+/**
+ * Result of a routing lookup. Along with the node found it carries the number of hops the lookup
+ * took, i.e. the number of times the query moved from one node to another.
+ */
+public class LookupResult implements Serializable {
+
+  /* Node found by the lookup */
+  private ChordID<InetAddress> nodeID;
+
+  /* Number of hops made by the lookup */
+  private int hops;
+
+  /* Predecessor of the node found, so that the lookup answers every key in (predecessorID, nodeID].
+  Null if the lookup did not learn it, e.g. when it was answered from the membership table */
+  private ChordID<InetAddress> predecessorID;
+
+  LookupResult(ChordID<InetAddress> nodeID, int hops) {
+    this.nodeID = nodeID;
+    this.hops = hops;
+  }
+
+  LookupResult(ChordID<InetAddress> nodeID, int hops, ChordID<InetAddress> predecessorID) {
+    this(nodeID, hops);
+    this.predecessorID = predecessorID;
+  }
+
+  public ChordID<InetAddress> getNodeID() {
+    return nodeID;
+  }
+
+  public int getHops() {
+    return hops;
+  }
+
+  /* Predecessor of the node found, null if the lookup did not learn it */
+  public ChordID<InetAddress> getPredecessorID() {
+    return predecessorID;
+  }
+
+  public String toString() {
+    return "[" + nodeID + ", hops=" + hops + "]";
+  }
+}
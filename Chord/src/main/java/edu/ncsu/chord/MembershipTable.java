@@ -0,0 +1,157 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Complete membership of the ring as known to one node, kept up to date by gossip. Used by
+ * LookupMode.ONE_HOP to find the owner of a key by binary search instead of routing.
+ *
+ * Every change of a member's state is a rumor that this node passes on a fixed number of times,
+ * piggybacked on the membership exchange of each stabilization round. Members that went down are
+ * kept as tombstones, so that an old rumor of them being up can not bring them back.
+ */
+class MembershipTable {
+
+  private final ChordID<InetAddress> selfChordID;
+
+  /* Latest known state of every member, live or not */
+  private final Map<ChordID<InetAddress>, MembershipUpdate> states = new HashMap<>();
+
+  /* Updates still being passed on, with the number of times each is left to be sent */
+  private final Map<ChordID<InetAddress>, Integer> rumors = new LinkedHashMap<>();
+
+  /* Live members sorted by ID. List is never modified, a new one is published on change */
+  private volatile List<ChordID<InetAddress>> members = Collections.emptyList();
+
+  /* Picks gossip partners. Seeded by our ID so that a simulated ring gossips the same way on every
+  run, while different nodes still pick different partners */
+  private final Random random;
+
+  MembershipTable(ChordID<InetAddress> selfChordID) {
+    this.selfChordID = selfChordID;
+    this.random = new Random(selfChordID.hashCode());
+    /* A restarted node gets a higher incarnation than any it had before */
+    apply(new MembershipUpdate(selfChordID, System.currentTimeMillis(), true));
+  }
+
+  /**
+   * Returns the first live member whose ID is equal to or bigger than id, wrapping around the
+   * ring, i.e. the owner of id if this table is complete.
+   */
+  ChordID<InetAddress> getOwner(Hash id) {
+    List<ChordID<InetAddress>> snapshot = members;
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    int low = 0;
+    int high = snapshot.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (snapshot.get(mid).compareTo(id) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return snapshot.get(low == snapshot.size() ? 0 : low);
+  }
+
+  int size() {
+    return members.size();
+  }
+
+  /* Any live member, possibly this node itself */
+  ChordID<InetAddress> getRandomMember() {
+    List<ChordID<InetAddress>> snapshot = members;
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    return snapshot.get(random.nextInt(snapshot.size()));
+  }
+
+  /* Applies an update received from a peer. Returns true if it changed anything */
+  synchronized boolean apply(MembershipUpdate update) {
+    ChordID<InetAddress> nodeID = update.getNodeID();
+    MembershipUpdate known = states.get(nodeID);
+    if (nodeID.equals(selfChordID) && !update.isAlive() && known != null) {
+      /* Somebody thinks this node is down, refute it with a newer incarnation */
+      if (update.getVersion() >= known.getVersion()) {
+        update = new MembershipUpdate(selfChordID, update.getVersion() + 1, true);
+      } else {
+        return false;
+      }
+    } else if (!update.supersedes(known)) {
+      return false;
+    }
+    states.put(nodeID, update);
+    rumors.put(nodeID, ChordConfig.MEMBERSHIP_GOSSIP_SENDS);
+    if (known == null || known.isAlive() != update.isAlive()) {
+      publishMembers();
+    }
+    return true;
+  }
+
+  synchronized boolean applyAll(List<MembershipUpdate> updates) {
+    boolean changed = false;
+    for (MembershipUpdate update : updates) {
+      changed |= apply(update);
+    }
+    return changed;
+  }
+
+  /**
+   * Adds nodeID as live if this table has never heard of it, e.g. because routing found it to be
+   * the owner of a key. Version 0 is older than any incarnation a node picks for itself, so the
+   * state the node spreads about itself always wins over this one.
+   */
+  synchronized boolean addIfMissing(ChordID<InetAddress> nodeID) {
+    return !states.containsKey(nodeID) && apply(new MembershipUpdate(nodeID, 0, true));
+  }
+
+  /* Records nodeID as down at its latest known incarnation, e.g. after it failed or left */
+  synchronized boolean markDown(ChordID<InetAddress> nodeID) {
+    MembershipUpdate known = states.get(nodeID);
+    return known != null && known.isAlive() && !nodeID.equals(selfChordID)
+           && apply(new MembershipUpdate(nodeID, known.getVersion(), false));
+  }
+
+  /* Rumors to send in one exchange. Each rumor is dropped once it has been sent often enough */
+  synchronized List<MembershipUpdate> takeRumors() {
+    List<MembershipUpdate> updates = new ArrayList<>(rumors.size());
+    Iterator<Map.Entry<ChordID<InetAddress>, Integer>> it = rumors.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<ChordID<InetAddress>, Integer> rumor = it.next();
+      updates.add(states.get(rumor.getKey()));
+      if (rumor.getValue() <= 1) {
+        it.remove();
+      } else {
+        rumor.setValue(rumor.getValue() - 1);
+      }
+    }
+    return updates;
+  }
+
+  /* State of every member, sent to a joining node and in periodic full exchanges */
+  synchronized List<MembershipUpdate> getAll() {
+    return new ArrayList<>(states.values());
+  }
+
+  private void publishMembers() {
+    TreeSet<ChordID<InetAddress>> live = new TreeSet<>();
+    for (MembershipUpdate state : states.values()) {
+      if (state.isAlive()) {
+        live.add(state.getNodeID());
+      }
+    }
+    members = Collections.unmodifiableList(new ArrayList<>(live));
+  }
+}
@@ -0,0 +1,49 @@
+package edu.ncsu.chord;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+
+/**
+ * State of one ring member as spread by membership gossip. version is the incarnation of the
+ * member: it is picked by the member itself when it starts and only ever grows, so a newer
+ * version always wins. At the same version a member reported down wins over one reported up,
+ * and a member that hears of its own death refutes it with a higher version.
+ */
+public class MembershipUpdate implements Serializable {
+
+  private final ChordID<InetAddress> nodeID;
+
+  private final long version;
+
+  private final boolean alive;
+
+  MembershipUpdate(ChordID<InetAddress> nodeID, long version, boolean alive) {
+    this.nodeID = nodeID;
+    this.version = version;
+    this.alive = alive;
+  }
+
+  public ChordID<InetAddress> getNodeID() {
+    return nodeID;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public boolean isAlive() {
+    return alive;
+  }
+
+  /* True if this update should replace other, the state known so far for the same member */
+  boolean supersedes(MembershipUpdate other) {
+    if (other == null || version != other.version) {
+      return other == null || version > other.version;
+    }
+    return !alive && other.alive;
+  }
+
+  public String toString() {
+    return "[" + nodeID + ", v" + version + (alive ? ", up]" : ", down]");
+  }
+}
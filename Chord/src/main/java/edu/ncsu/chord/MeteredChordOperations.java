@@ -0,0 +1,126 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import edu.ncsu.chord.ChordMetrics.Rpc;
+
+/**
+ * Wraps the stub of a remote node and records latency and failures of every call made on it in
+ * ChordMetrics, and its outcome in the failure detector. ChordRMIUtils hands out stubs only through
+ * this wrapper, so all outgoing calls are measured whichever transport carries them.
+ */
+class MeteredChordOperations implements ChordOperations {
+
+  private interface RemoteCall<R> {
+    R call() throws RemoteException;
+  }
+
+  private final ChordOperations target;
+
+  /* Machine the calls go to */
+  private final InetAddress peer;
+
+  MeteredChordOperations(ChordOperations target, InetAddress peer) {
+    this.target = target;
+    this.peer = peer;
+  }
+
+  private <R> R measure(Rpc rpc, RemoteCall<R> remoteCall) throws RemoteException {
+    long start = System.nanoTime();
+    try {
+      R result = remoteCall.call();
+      ChordMetrics.recordRpc(rpc, start);
+      ChordNode.recordCallResult(peer, true);
+      return result;
+    } catch (RemoteException | RuntimeException e) {
+      ChordMetrics.recordRpcFailure(rpc);
+      ChordNode.recordCallResult(peer, false);
+      throw e;
+    }
+  }
+
+  @Override
+  public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID, Hash id)
+      throws RemoteException {
+    return measure(Rpc.FIND_SUCCESSOR_OF, () -> target.getSuccessor(callerID, id));
+  }
+
+  @Override
+  public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID) throws RemoteException {
+    return measure(Rpc.GET_SUCCESSOR, () -> target.getSuccessor(callerID));
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getSuccessorList(ChordID<InetAddress> callerID)
+      throws RemoteException {
+    return measure(Rpc.GET_SUCCESSOR_LIST, () -> target.getSuccessorList(callerID));
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getFingerNodes(ChordID<InetAddress> callerID)
+      throws RemoteException {
+    return measure(Rpc.GET_FINGER_NODES, () -> target.getFingerNodes(callerID));
+  }
+
+  @Override
+  public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID, Hash id)
+      throws RemoteException {
+    return measure(Rpc.FIND_PREDECESSOR_OF, () -> target.getPredecessor(callerID, id));
+  }
+
+  @Override
+  public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID) throws RemoteException {
+    return measure(Rpc.GET_PREDECESSOR, () -> target.getPredecessor(callerID));
+  }
+
+  @Override
+  public ChordID<InetAddress> getClosestPrecedingFinger(ChordID<InetAddress> callerID, Hash id)
+      throws RemoteException {
+    return measure(Rpc.GET_CLOSEST_PRECEDING_FINGER,
+                   () -> target.getClosestPrecedingFinger(callerID, id));
+  }
+
+  @Override
+  public LookupResult findSuccessor(ChordID<InetAddress> callerID, Hash id, int hops)
+      throws RemoteException {
+    return measure(Rpc.FIND_SUCCESSOR, () -> target.findSuccessor(callerID, id, hops));
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getSuccessors(ChordID<InetAddress> callerID, List<Hash> ids,
+                                                  int hops) throws RemoteException {
+    return measure(Rpc.GET_SUCCESSORS, () -> target.getSuccessors(callerID, ids, hops));
+  }
+
+  @Override
+  public void notify(ChordID<InetAddress> callerID, ChordID<InetAddress> id) throws RemoteException {
+    measure(Rpc.NOTIFY, () -> {
+      target.notify(callerID, id);
+      return null;
+    });
+  }
+
+  @Override
+  public void notifyLeave(ChordID<InetAddress> callerID, ChordID<InetAddress> leavingID,
+                          ChordID<InetAddress> predecessor, ChordID<InetAddress> successor)
+      throws RemoteException {
+    measure(Rpc.NOTIFY_LEAVE, () -> {
+      target.notifyLeave(callerID, leavingID, predecessor, successor);
+      return null;
+    });
+  }
+
+  @Override
+  public List<MembershipUpdate> exchangeMembership(ChordID<InetAddress> callerID,
+                                                   List<MembershipUpdate> updates,
+                                                   boolean fullTable) throws RemoteException {
+    return measure(Rpc.EXCHANGE_MEMBERSHIP,
+                   () -> target.exchangeMembership(callerID, updates, fullTable));
+  }
+
+  public String toString() {
+    return "Metered" + target;
+  }
+}
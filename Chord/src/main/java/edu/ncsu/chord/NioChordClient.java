@@ -0,0 +1,249 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static edu.ncsu.chord.ChordWireCodec.*;
+
+/**
+ * ChordOperations of a remote virtual node over the NIO transport. All virtual nodes of a machine
+ * share one connection, and any number of calls may be in flight on it at once; replies are
+ * matched to calls by request id. Failures are reported as RemoteException just like with RMI.
+ */
+class NioChordClient implements ChordOperations {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(NioChordClient.class);
+
+  /* Body of a request after its header */
+  private interface RequestWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /* Reads the result out of a response */
+  private interface ResponseReader<R> {
+    R read(ByteBuffer in) throws IOException;
+  }
+
+  /* Connection to one machine along with the calls waiting for a reply on it */
+  private static class Connection implements NioEventLoop.FrameHandler {
+    private final ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> pending =
+        new ConcurrentHashMap<>();
+    private NioConnection connection;
+
+    @Override
+    public void onFrame(NioConnection connection, ByteBuffer frame) {
+      CompletableFuture<ByteBuffer> reply = pending.remove(frame.getLong());
+      if (reply != null) {
+        reply.complete(frame);
+      }
+    }
+
+    @Override
+    public void onClose(NioConnection connection) {
+      for (Long requestId : pending.keySet()) {
+        CompletableFuture<ByteBuffer> reply = pending.remove(requestId);
+        if (reply != null) {
+          reply.completeExceptionally(new IOException("Connection closed"));
+        }
+      }
+    }
+
+    boolean isOpen() {
+      return connection != null && !connection.isClosed();
+    }
+  }
+
+  private static final AtomicLong nextRequestId = new AtomicLong();
+
+  private static final ConcurrentHashMap<InetAddress, Connection> connections =
+      new ConcurrentHashMap<>();
+
+  private static NioEventLoop eventLoop;
+
+  private final ChordID<InetAddress> nodeID;
+
+  private final Connection connection;
+
+  private NioChordClient(ChordID<InetAddress> nodeID, Connection connection) {
+    this.nodeID = nodeID;
+    this.connection = connection;
+  }
+
+  /**
+   * Returns client for nodeID, opening a connection to its machine unless one is already open.
+   * Returns null if the machine can not be reached over the NIO transport.
+   */
+  static NioChordClient connect(ChordID<InetAddress> nodeID) {
+    try {
+      Connection connection = connections.get(nodeID.getKey());
+      if (connection == null || !connection.isOpen()) {
+        connection = openConnection(nodeID.getKey());
+      }
+      return new NioChordClient(nodeID, connection);
+    } catch (IOException e) {
+      logger.error("Unable to connect to " + nodeID + " over NIO: " + e);
+      return null;
+    }
+  }
+
+  private static synchronized Connection openConnection(InetAddress ip) throws IOException {
+    Connection connection = connections.get(ip);
+    if (connection != null && connection.isOpen()) {
+      return connection;
+    }
+    if (eventLoop == null) {
+      eventLoop = new NioEventLoop("nio-chord-client");
+    }
+    connection = new Connection();
+    connection.connection = eventLoop.connect(new InetSocketAddress(ip, ChordConfig.NIO_PORT),
+                                              ChordConfig.NIO_CONNECT_TIMEOUT, connection);
+    connections.put(ip, connection);
+    return connection;
+  }
+
+  private <R> R call(byte opcode, ChordID<InetAddress> callerID, RequestWriter request,
+                     ResponseReader<R> response) throws RemoteException {
+    long requestId = nextRequestId.incrementAndGet();
+    CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeLong(requestId);
+      out.writeByte(opcode);
+      out.writeInt(nodeID.getVirtualIndex());
+      writeNodeID(out, callerID);
+      request.write(out);
+
+      connection.pending.put(requestId, reply);
+      if (!connection.isOpen()) {
+        throw new IOException("Connection closed");
+      }
+      connection.connection.send(bytes.toByteArray());
+
+      ByteBuffer in = reply.get(ChordConfig.NIO_CALL_TIMEOUT, TimeUnit.MILLISECONDS);
+      if (in.get() != STATUS_OK) {
+        throw new RemoteException(nodeID + " failed: " + readString(in));
+      }
+      return response.read(in);
+    } catch (RemoteException e) {
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      throw new RemoteException("Call to " + nodeID + " failed", e);
+    } catch (ExecutionException e) {
+      throw new RemoteException("Call to " + nodeID + " failed", e.getCause());
+    } catch (TimeoutException e) {
+      throw new RemoteException("Call to " + nodeID + " timed out", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while calling " + nodeID, e);
+    } finally {
+      connection.pending.remove(requestId);
+    }
+  }
+
+  @Override
+  public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID, Hash id)
+      throws RemoteException {
+    return call(OP_FIND_SUCCESSOR_OF, callerID, out -> writeHash(out, id),
+                ChordWireCodec::readNodeID);
+  }
+
+  @Override
+  public ChordID<InetAddress> getSuccessor(ChordID<InetAddress> callerID) throws RemoteException {
+    return call(OP_GET_SUCCESSOR, callerID, out -> { }, ChordWireCodec::readNodeID);
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getSuccessorList(ChordID<InetAddress> callerID)
+      throws RemoteException {
+    return call(OP_GET_SUCCESSOR_LIST, callerID, out -> { }, ChordWireCodec::readNodeIDs);
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getFingerNodes(ChordID<InetAddress> callerID)
+      throws RemoteException {
+    return call(OP_GET_FINGER_NODES, callerID, out -> { }, ChordWireCodec::readNodeIDs);
+  }
+
+  @Override
+  public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID, Hash id)
+      throws RemoteException {
+    return call(OP_FIND_PREDECESSOR_OF, callerID, out -> writeHash(out, id),
+                ChordWireCodec::readNodeID);
+  }
+
+  @Override
+  public ChordID<InetAddress> getPredecessor(ChordID<InetAddress> callerID) throws RemoteException {
+    return call(OP_GET_PREDECESSOR, callerID, out -> { }, ChordWireCodec::readNodeID);
+  }
+
+  @Override
+  public ChordID<InetAddress> getClosestPrecedingFinger(ChordID<InetAddress> callerID, Hash id)
+      throws RemoteException {
+    return call(OP_GET_CLOSEST_PRECEDING_FINGER, callerID, out -> writeHash(out, id),
+                ChordWireCodec::readNodeID);
+  }
+
+  @Override
+  public LookupResult findSuccessor(ChordID<InetAddress> callerID, Hash id, int hops)
+      throws RemoteException {
+    return call(OP_FIND_SUCCESSOR, callerID, out -> {
+      writeHash(out, id);
+      out.writeInt(hops);
+    }, ChordWireCodec::readLookupResult);
+  }
+
+  @Override
+  public List<ChordID<InetAddress>> getSuccessors(ChordID<InetAddress> callerID, List<Hash> ids,
+                                                  int hops) throws RemoteException {
+    return call(OP_GET_SUCCESSORS, callerID, out -> {
+      writeHashes(out, ids);
+      out.writeInt(hops);
+    }, ChordWireCodec::readNodeIDs);
+  }
+
+  @Override
+  public void notify(ChordID<InetAddress> callerID, ChordID<InetAddress> id) throws RemoteException {
+    call(OP_NOTIFY, callerID, out -> writeNodeID(out, id), in -> null);
+  }
+
+  @Override
+  public void notifyLeave(ChordID<InetAddress> callerID, ChordID<InetAddress> leavingID,
+                          ChordID<InetAddress> predecessor, ChordID<InetAddress> successor)
+      throws RemoteException {
+    call(OP_NOTIFY_LEAVE, callerID, out -> {
+      writeNodeID(out, leavingID);
+      writeNodeID(out, predecessor);
+      writeNodeID(out, successor);
+    }, in -> null);
+  }
+
+  @Override
+  public List<MembershipUpdate> exchangeMembership(ChordID<InetAddress> callerID,
+                                                   List<MembershipUpdate> updates,
+                                                   boolean fullTable) throws RemoteException {
+    return call(OP_EXCHANGE_MEMBERSHIP, callerID, out -> {
+      writeMembershipUpdates(out, updates);
+      out.writeBoolean(fullTable);
+    }, ChordWireCodec::readMembershipUpdates);
+  }
+
+  public String toString() {
+    return "NioChordClient" + nodeID;
+  }
+}
@@ -0,0 +1,171 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static edu.ncsu.chord.ChordWireCodec.*;
+
+/**
+ * Serves ChordOperations calls of all virtual nodes of this process over the NIO transport. One
+ * selector thread reads requests from all connections and a small worker pool runs them, so the
+ * number of threads does not grow with the number of peers. Lookups, which call other machines
+ * themselves, run on a separate pool instead. They wait on peers that may in turn be waiting on
+ * this process, which with a shared bounded pool could leave every worker of two machines waiting
+ * on the other. Calls to nodes of this process do not come back through here,
+ * ChordRMIUtils makes them directly.
+ */
+class NioChordServer implements NioEventLoop.FrameHandler {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(NioChordServer.class);
+
+  private static NioChordServer instance;
+
+  /* Virtual nodes of this process by their virtual index */
+  private final ConcurrentHashMap<Integer, ChordOperations> nodes = new ConcurrentHashMap<>();
+
+  private final ExecutorService workers =
+      Executors.newFixedThreadPool(ChordConfig.NIO_WORKER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "nio-chord-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /* Threads running lookups. Grows with the lookups in flight, each of which ends after at most
+  MAX_LOOKUP_HOPS hops or a call timeout, and idle threads die off */
+  private final ExecutorService lookups = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "nio-chord-lookup");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private NioChordServer() throws IOException {
+    NioEventLoop eventLoop = new NioEventLoop("nio-chord-server");
+    eventLoop.listen(new InetSocketAddress(ChordConfig.NIO_PORT), this);
+    logger.info("NIO chord transport listening on port " + ChordConfig.NIO_PORT);
+  }
+
+  /* Makes node reachable over the NIO transport, starting the server on first use */
+  static synchronized boolean exportNodeObject(ChordNode node) {
+    try {
+      if (instance == null) {
+        instance = new NioChordServer();
+      }
+    } catch (IOException e) {
+      logger.error("Unable to start NIO chord transport", e);
+      return false;
+    }
+    instance.nodes.put(node.selfChordID.getVirtualIndex(), node);
+    return true;
+  }
+
+  @Override
+  public void onFrame(NioConnection connection, ByteBuffer frame) {
+    /* Opcode follows the request ID */
+    byte opcode = frame.get(frame.position() + Long.BYTES);
+    ExecutorService executor = isLookup(opcode) ? lookups : workers;
+    executor.execute(() -> connection.send(handleRequest(frame)));
+  }
+
+  /* True for calls that look an ID up and so make remote calls while they run */
+  private static boolean isLookup(byte opcode) {
+    return opcode == OP_FIND_SUCCESSOR || opcode == OP_GET_SUCCESSORS
+           || opcode == OP_FIND_SUCCESSOR_OF || opcode == OP_FIND_PREDECESSOR_OF;
+  }
+
+  @Override
+  public void onClose(NioConnection connection) {
+  }
+
+  private byte[] handleRequest(ByteBuffer request) {
+    long requestId = request.getLong();
+    byte opcode = request.get();
+    int virtualIndex = request.getInt();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeLong(requestId);
+      out.writeByte(STATUS_OK);
+      ChordOperations node = nodes.get(virtualIndex);
+      if (node == null) {
+        throw new IOException("No virtual node " + virtualIndex + " on this process");
+      }
+      invoke(node, opcode, request, out);
+    } catch (Exception e) {
+      logger.debug("Request " + requestId + " with opcode " + opcode + " failed", e);
+      bytes.reset();
+      try {
+        out.writeLong(requestId);
+        out.writeByte(STATUS_ERROR);
+        writeString(out, String.valueOf(e));
+      } catch (IOException nestedException) {
+        /* Writing to a byte array can not fail */
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void invoke(ChordOperations node, byte opcode, ByteBuffer in, DataOutputStream out)
+      throws IOException {
+    ChordID<InetAddress> callerID = readNodeID(in);
+    switch (opcode) {
+      case OP_GET_SUCCESSOR:
+        writeNodeID(out, node.getSuccessor(callerID));
+        break;
+      case OP_FIND_SUCCESSOR_OF:
+        writeNodeID(out, node.getSuccessor(callerID, readHash(in)));
+        break;
+      case OP_GET_PREDECESSOR:
+        writeNodeID(out, node.getPredecessor(callerID));
+        break;
+      case OP_FIND_PREDECESSOR_OF:
+        writeNodeID(out, node.getPredecessor(callerID, readHash(in)));
+        break;
+      case OP_GET_CLOSEST_PRECEDING_FINGER:
+        writeNodeID(out, node.getClosestPrecedingFinger(callerID, readHash(in)));
+        break;
+      case OP_FIND_SUCCESSOR: {
+        Hash id = readHash(in);
+        writeLookupResult(out, node.findSuccessor(callerID, id, in.getInt()));
+        break;
+      }
+      case OP_GET_SUCCESSORS: {
+        List<Hash> ids = readHashes(in);
+        writeNodeIDs(out, node.getSuccessors(callerID, ids, in.getInt()));
+        break;
+      }
+      case OP_GET_SUCCESSOR_LIST:
+        writeNodeIDs(out, node.getSuccessorList(callerID));
+        break;
+      case OP_GET_FINGER_NODES:
+        writeNodeIDs(out, node.getFingerNodes(callerID));
+        break;
+      case OP_NOTIFY:
+        node.notify(callerID, readNodeID(in));
+        break;
+      case OP_NOTIFY_LEAVE: {
+        ChordID<InetAddress> leavingID = readNodeID(in);
+        ChordID<InetAddress> predecessor = readNodeID(in);
+        node.notifyLeave(callerID, leavingID, predecessor, readNodeID(in));
+        break;
+      }
+      case OP_EXCHANGE_MEMBERSHIP: {
+        List<MembershipUpdate> updates = readMembershipUpdates(in);
+        writeMembershipUpdates(out, node.exchangeMembership(callerID, updates, in.get() != 0));
+        break;
+      }
+      default:
+        throw new IOException("Unknown opcode " + opcode);
+    }
+  }
+}
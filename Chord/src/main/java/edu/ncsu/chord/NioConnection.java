@@ -0,0 +1,127 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A framed, non blocking connection of the NIO transport. Any thread may send frames; reading,
+ * writing and closing happen on the selector thread of the owning NioEventLoop.
+ */
+class NioConnection {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(NioConnection.class);
+
+  private final SocketChannel channel;
+
+  private final NioEventLoop.FrameHandler handler;
+
+  private final NioEventLoop eventLoop;
+
+  /* Bytes received but not yet handed out as frames */
+  private ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+  private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean closed = false;
+
+  NioConnection(SocketChannel channel, NioEventLoop.FrameHandler handler, NioEventLoop eventLoop) {
+    this.channel = channel;
+    this.handler = handler;
+    this.eventLoop = eventLoop;
+  }
+
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /* Queues body as one frame. Safe to call from any thread */
+  void send(byte[] body) {
+    ByteBuffer frame = ByteBuffer.allocate(4 + body.length);
+    frame.putInt(body.length).put(body).flip();
+    writeQueue.add(frame);
+    eventLoop.execute(this::flush);
+  }
+
+  /* Reads whatever is available and hands every complete frame to the handler */
+  void read() {
+    try {
+      if (channel.read(readBuffer) < 0) {
+        close();
+        return;
+      }
+    } catch (IOException e) {
+      close();
+      return;
+    }
+    readBuffer.flip();
+    while (readBuffer.remaining() >= 4) {
+      int length = readBuffer.getInt(readBuffer.position());
+      if (length < 0 || length > ChordWireCodec.MAX_FRAME_SIZE) {
+        logger.error("Bad frame length " + length + " from " + channel);
+        close();
+        return;
+      }
+      if (readBuffer.remaining() < 4 + length) {
+        break;
+      }
+      readBuffer.getInt();
+      byte[] body = new byte[length];
+      readBuffer.get(body);
+      handler.onFrame(this, ByteBuffer.wrap(body));
+    }
+    readBuffer.compact();
+    /* Make room for a frame bigger than the buffer */
+    if (!readBuffer.hasRemaining()) {
+      ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+      readBuffer.flip();
+      bigger.put(readBuffer);
+      readBuffer = bigger;
+    }
+  }
+
+  /* Writes queued frames until done or the socket buffer is full. Selector thread only */
+  void flush() {
+    SelectionKey key = eventLoop.keyFor(channel);
+    if (closed || key == null || !key.isValid()) {
+      return;
+    }
+    try {
+      ByteBuffer frame;
+      while ((frame = writeQueue.peek()) != null) {
+        channel.write(frame);
+        if (frame.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          return;
+        }
+        writeQueue.poll();
+      }
+      key.interestOps(SelectionKey.OP_READ);
+    } catch (IOException e) {
+      close();
+    }
+  }
+
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.debug("Error closing " + channel, e);
+    }
+    writeQueue.clear();
+    handler.onClose(this);
+  }
+}
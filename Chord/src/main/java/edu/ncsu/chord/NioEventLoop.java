@@ -0,0 +1,137 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread doing all socket I/O of the NIO transport. Connections are only touched on
+ * this thread; other threads hand work to it through execute(). Received frames are passed to the
+ * FrameHandler of the connection, still on this thread, so handlers must not block.
+ */
+class NioEventLoop implements Runnable {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(NioEventLoop.class);
+
+  interface FrameHandler {
+    void onFrame(NioConnection connection, ByteBuffer frame);
+
+    void onClose(NioConnection connection);
+  }
+
+  private final Selector selector;
+
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+  NioEventLoop(String name) throws IOException {
+    selector = Selector.open();
+    Thread thread = new Thread(this, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /* Runs task on the selector thread */
+  void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  /* Accepts connections on address, every accepted connection delivers its frames to handler */
+  void listen(InetSocketAddress address, FrameHandler handler) throws IOException {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().setReuseAddress(true);
+    server.bind(address);
+    server.configureBlocking(false);
+    execute(() -> {
+      try {
+        server.register(selector, SelectionKey.OP_ACCEPT, handler);
+      } catch (ClosedChannelException e) {
+        logger.error("Unable to listen on " + address, e);
+      }
+    });
+  }
+
+  /* Opens a connection to address. Blocks the calling thread until connected or timed out */
+  NioConnection connect(InetSocketAddress address, int timeoutMillis, FrameHandler handler)
+      throws IOException {
+    SocketChannel channel = SocketChannel.open();
+    try {
+      channel.socket().connect(address, timeoutMillis);
+      channel.socket().setTcpNoDelay(true);
+      channel.configureBlocking(false);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    NioConnection connection = new NioConnection(channel, handler, this);
+    execute(() -> register(connection));
+    return connection;
+  }
+
+  SelectionKey keyFor(SocketChannel channel) {
+    return channel.keyFor(selector);
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        selector.select();
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+          task.run();
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept(key);
+            continue;
+          }
+          NioConnection connection = (NioConnection) key.attachment();
+          if (key.isReadable()) {
+            connection.read();
+          }
+          if (key.isValid() && key.isWritable()) {
+            connection.flush();
+          }
+        }
+      } catch (Exception e) {
+        /* Never let one bad connection stop I/O of all others */
+        logger.error("Error in NIO event loop", e);
+      }
+    }
+  }
+
+  private void accept(SelectionKey key) throws IOException {
+    SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    register(new NioConnection(channel, (FrameHandler) key.attachment(), this));
+  }
+
+  private void register(NioConnection connection) {
+    try {
+      connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+    } catch (ClosedChannelException e) {
+      connection.close();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a smoothed round trip time for every peer this node talks to. Samples are taken from RPCs
+ * that are made anyway (stabilization and routing hops), so measuring costs no extra traffic. A
+ * peer whose last sample is older than the configured age is treated as unmeasured.
+ */
+class PeerLatencyTracker {
+
+  /* Weight of a new sample in the moving average */
+  private static final double SMOOTHING = 0.2;
+
+  private static class Sample {
+    final double rttNanos;
+    final long takenAt;
+
+    Sample(double rttNanos, long takenAt) {
+      this.rttNanos = rttNanos;
+      this.takenAt = takenAt;
+    }
+  }
+
+  private final ConcurrentHashMap<InetAddress, Sample> samples = new ConcurrentHashMap<>();
+
+  private final long maxAgeNanos;
+
+  /* Time samples are taken at, in nanoseconds */
+  private final LongSupplier nanoClock;
+
+  PeerLatencyTracker(long maxAge, TimeUnit unit, LongSupplier nanoClock) {
+    this.maxAgeNanos = unit.toNanos(maxAge);
+    this.nanoClock = nanoClock;
+  }
+
+  void record(InetAddress peer, long rttNanos) {
+    long now = nanoClock.getAsLong();
+    samples.compute(peer, (ip, previous) -> new Sample(
+        previous == null ? rttNanos : previous.rttNanos + SMOOTHING * (rttNanos - previous.rttNanos),
+        now));
+  }
+
+  /* Smoothed round trip time of peer in nanoseconds, or -1 if there is no recent sample */
+  long getRtt(InetAddress peer) {
+    Sample sample = samples.get(peer);
+    if (sample == null || nanoClock.getAsLong() - sample.takenAt > maxAgeNanos) {
+      return -1;
+    }
+    return (long) sample.rttNanos;
+  }
+
+  /* True if peer has answered a call recently enough for its round trip time to be trusted */
+  boolean hasRecentSample(InetAddress peer) {
+    return getRtt(peer) >= 0;
+  }
+}
@@ -0,0 +1,134 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al.). Every successful call to or from a peer is a
+ * heartbeat. From the inter-arrival times of recent heartbeats we estimate how likely it is that
+ * the next one is merely late, and express the suspicion as phi = -log10(P(late)). Peers are only
+ * called when there is something to ask, so silence alone says nothing: a peer is suspected only
+ * once a call to it has failed since its last heartbeat and phi has crossed PHI_THRESHOLD. A single
+ * timed out call therefore does not declare a flapping peer dead, while a peer that stopped
+ * answering is skipped without dialing it.
+ */
+class PhiAccrualFailureDetector {
+
+  private static class HeartbeatHistory {
+    final ArrayDeque<Long> intervals = new ArrayDeque<>();
+    long intervalSum;
+    long intervalSquaredSum;
+    long lastHeartbeatMillis;
+    long lastFailureMillis;
+    long lastProbeMillis;
+
+    HeartbeatHistory(long now) {
+      lastHeartbeatMillis = now;
+    }
+
+    synchronized void heartbeat(long now) {
+      long interval = now - lastHeartbeatMillis;
+      lastHeartbeatMillis = now;
+      /* Back to back calls say nothing about the heartbeat rate, only spaced out ones are kept */
+      if (interval < ChordConfig.FAILURE_DETECTOR_MIN_INTERVAL) {
+        return;
+      }
+      intervals.addLast(interval);
+      intervalSum += interval;
+      intervalSquaredSum += interval * interval;
+      if (intervals.size() > ChordConfig.FAILURE_DETECTOR_WINDOW) {
+        long dropped = intervals.removeFirst();
+        intervalSum -= dropped;
+        intervalSquaredSum -= dropped * dropped;
+      }
+    }
+
+    synchronized void failure(long now) {
+      lastFailureMillis = now;
+    }
+
+    /* True if a call has failed since the last heartbeat, i.e. there is evidence of failure */
+    synchronized boolean hasFailedSinceHeartbeat() {
+      return lastFailureMillis > lastHeartbeatMillis;
+    }
+
+    synchronized double phi(long now) {
+      double mean;
+      double stdDev;
+      if (intervals.isEmpty()) {
+        mean = ChordConfig.FAILURE_DETECTOR_FIRST_INTERVAL;
+        stdDev = mean / 4;
+      } else {
+        mean = (double) intervalSum / intervals.size();
+        stdDev = Math.sqrt(Math.max(0, (double) intervalSquaredSum / intervals.size() - mean * mean));
+      }
+      mean += ChordConfig.FAILURE_DETECTOR_ACCEPTABLE_PAUSE;
+      stdDev = Math.max(stdDev, ChordConfig.FAILURE_DETECTOR_MIN_STD_DEVIATION);
+      return PhiAccrualFailureDetector.phi(now - lastHeartbeatMillis, mean, stdDev);
+    }
+
+    synchronized boolean tryProbe(long now) {
+      if (now - lastProbeMillis < ChordConfig.FAILURE_DETECTOR_PROBE_INTERVAL) {
+        return false;
+      }
+      lastProbeMillis = now;
+      return true;
+    }
+  }
+
+  private final ConcurrentHashMap<InetAddress, HeartbeatHistory> histories = new ConcurrentHashMap<>();
+
+  void heartbeat(InetAddress peer) {
+    long now = System.currentTimeMillis();
+    HeartbeatHistory history = histories.putIfAbsent(peer, new HeartbeatHistory(now));
+    if (history != null) {
+      history.heartbeat(now);
+    }
+  }
+
+  /**
+   * Records a failed call to peer. A peer never heard from counts the first failure as its last
+   * sign of life, so it is suspected only if calls to it keep failing.
+   */
+  void failure(InetAddress peer) {
+    long now = System.currentTimeMillis();
+    HeartbeatHistory history = histories.computeIfAbsent(peer, p -> new HeartbeatHistory(now - 1));
+    history.failure(now);
+  }
+
+  /* Current suspicion level of peer. 0 for peers never heard from, nothing is known about them */
+  double phi(InetAddress peer) {
+    HeartbeatHistory history = histories.get(peer);
+    return history == null ? 0.0 : history.phi(System.currentTimeMillis());
+  }
+
+  /* False only if a call to peer failed since its last heartbeat and phi crossed PHI_THRESHOLD */
+  boolean isAvailable(InetAddress peer) {
+    HeartbeatHistory history = histories.get(peer);
+    return history == null || !history.hasFailedSinceHeartbeat()
+           || history.phi(System.currentTimeMillis()) < ChordConfig.PHI_THRESHOLD;
+  }
+
+  /**
+   * True if peer may be dialed. Suspected peers are still dialed once every
+   * FAILURE_DETECTOR_PROBE_INTERVAL so that a peer which comes back is noticed again.
+   */
+  boolean shouldContact(InetAddress peer) {
+    if (isAvailable(peer)) {
+      return true;
+    }
+    HeartbeatHistory history = histories.get(peer);
+    return history == null || history.tryProbe(System.currentTimeMillis());
+  }
+
+  /* phi for a normal distribution of intervals, using the logistic approximation of its CDF */
+  private static double phi(long timeSinceLast, double mean, double stdDev) {
+    double y = (timeSinceLast - mean) / stdDev;
+    double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+    if (timeSinceLast > mean) {
+      return -Math.log10(e / (1.0 + e));
+    }
+    return -Math.log10(1.0 - 1.0 / (1.0 + e));
+  }
+}
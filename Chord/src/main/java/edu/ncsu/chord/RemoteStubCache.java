@@ -0,0 +1,83 @@
+package edu.ncsu.chord;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of RMI stubs for remote peers. Looking up a stub in a remote registry costs a full network
+ * round trip, so a stub is reused until it is older than the configured TTL or until a call made on
+ * it fails and the caller invalidates it.
+ */
+class RemoteStubCache<K, V> {
+
+  private static class CachedStub<V> {
+    final V stub;
+    final long createdAt;
+
+    CachedStub(V stub, long createdAt) {
+      this.stub = stub;
+      this.createdAt = createdAt;
+    }
+  }
+
+  private final ConcurrentHashMap<K, CachedStub<V>> stubs = new ConcurrentHashMap<>();
+
+  /* Age after which a stub is looked up again even if no call on it has failed */
+  private final long ttlNanos;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  RemoteStubCache(long ttl, TimeUnit unit) {
+    this.ttlNanos = unit.toNanos(ttl);
+  }
+
+  /* Returns cached stub for key or null if there is none or it has expired */
+  V get(K key) {
+    CachedStub<V> cached = stubs.get(key);
+    if (cached != null && System.nanoTime() - cached.createdAt > ttlNanos) {
+      stubs.remove(key, cached);
+      cached = null;
+    }
+    if (cached == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return cached.stub;
+  }
+
+  void put(K key, V stub) {
+    stubs.put(key, new CachedStub<>(stub, System.nanoTime()));
+  }
+
+  /* Drop the stub for key. Called whenever a remote call on that stub has failed */
+  void invalidate(K key) {
+    if (stubs.remove(key) != null) {
+      invalidations.incrementAndGet();
+    }
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long getInvalidations() {
+    return invalidations.get();
+  }
+
+  int size() {
+    return stubs.size();
+  }
+
+  public String toString() {
+    return "[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+           + ", invalidations=" + getInvalidations() + "]";
+  }
+}
@@ -0,0 +1,68 @@
+package edu.ncsu.chord;
+
+/**
+ * Ring arithmetic on raw hash values. For IDs narrower than 64 bits every position is a long in
+ * [0, 2^bits) and 'mask' is 2^bits - 1. Wider IDs are kept in several 64 bit words treated as
+ * unsigned, for which compare, carry and borrow helpers are given. These methods neither allocate
+ * nor convert values to strings, so they can be used on hot paths like finger scans and key
+ * rebalancing.
+ */
+final class RingMath {
+
+  private RingMath() {
+  }
+
+  /* Returns value + 2^n wrapped around the ring */
+  static long addPowerOfTwo(long value, int n, long mask) {
+    return (value + (1L << n)) & mask;
+  }
+
+  /* Unsigned comparison of two values made of high, mid and low words */
+  static int compare(long aHigh, long aMid, long aLow, long bHigh, long bMid, long bLow) {
+    if (aHigh != bHigh) {
+      return Long.compareUnsigned(aHigh, bHigh);
+    } else if (aMid != bMid) {
+      return Long.compareUnsigned(aMid, bMid);
+    }
+    return Long.compareUnsigned(aLow, bLow);
+  }
+
+  /* Carry out of the word addition a + b that produced sum, for any single addend b */
+  static long carry(long a, long sum) {
+    return Long.compareUnsigned(sum, a) < 0 ? 1 : 0;
+  }
+
+  /* Borrow out of the word subtraction a - b - borrowIn */
+  static long borrow(long a, long b, long borrowIn) {
+    return (Long.compareUnsigned(a, b) < 0 || (a == b && borrowIn != 0)) ? 1 : 0;
+  }
+
+  /**
+   * Checks if value lies in the ring interval between start and end. Start can be bigger than end
+   * when the interval wraps around zero. When start == end and both ends are exclusive, the
+   * interval covers the whole ring except that point.
+   */
+  static boolean inRange(long value, long start, long end, boolean startInclusive,
+			 boolean endInclusive, long mask) {
+    /* If start = x and end = x + 1 and startInclusive is false & endInclusive is false
+     * then nothing can be inRange of this interval */
+    if (!startInclusive && !endInclusive && ((start + 1) & mask) == end) {
+      return false;
+    }
+
+    if (!startInclusive) {
+      start = (start + 1) & mask;
+    }
+    if (!endInclusive) {
+      end = (end - 1) & mask;
+    }
+
+    if (end == start) {
+      return value == end;
+    } else if (end < start) {
+      return !(end < value && value < start);
+    } else {
+      return start <= value && value <= end;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package edu.ncsu.chord;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the routing state of a ChordNode: predecessor, finger table (first entry
+ * being the successor) and successor list. A node never changes a snapshot, it publishes a new one.
+ * RMI threads serving lookups read the current snapshot once and get a consistent view without
+ * taking any lock.
+ */
+final class RoutingState {
+
+  final ChordID<InetAddress> predecessor;
+
+  final FingerTable fingerTable;
+
+  final List<ChordID<InetAddress>> successorList;
+
+  RoutingState(ChordID<InetAddress> predecessor, FingerTable fingerTable,
+               List<ChordID<InetAddress>> successorList) {
+    this.predecessor = predecessor;
+    this.fingerTable = fingerTable;
+    this.successorList = Collections.unmodifiableList(new ArrayList<>(successorList));
+  }
+
+  ChordID<InetAddress> getSuccessor() {
+    return fingerTable.getEntry(0).responsibleNodeID;
+  }
+
+  RoutingState withPredecessor(ChordID<InetAddress> predecessor) {
+    return new RoutingState(predecessor, fingerTable, successorList);
+  }
+
+  RoutingState withSuccessor(ChordID<InetAddress> successor) {
+    List<FingerTableEntry> entries = fingerTable.copyEntries();
+    entries.set(0, entries.get(0).withResponsibleNodeID(successor));
+    return withFingerTable(new FingerTable(entries));
+  }
+
+  RoutingState withFingerTable(FingerTable fingerTable) {
+    return new RoutingState(predecessor, fingerTable, successorList);
+  }
+
+  RoutingState withSuccessorList(List<ChordID<InetAddress>> successorList) {
+    return new RoutingState(predecessor, fingerTable, successorList);
+  }
+
+  /**
+   * Removes a node that left the ring: fingers pointing at it point at successor, the node that
+   * took its keys over, and it is dropped from the successor list. Predecessor is left as is.
+   */
+  RoutingState withoutNode(ChordID<InetAddress> nodeID, ChordID<InetAddress> successor) {
+    List<FingerTableEntry> entries = fingerTable.copyEntries();
+    for (int i = 0; i < entries.size(); i++) {
+      FingerTableEntry entry = entries.get(i);
+      if (nodeID.equals(entry.responsibleNodeID)) {
+        entry = entry.withResponsibleNodeID(successor);
+      }
+      if (nodeID.equals(entry.proximityNodeID)) {
+        entry = entry.withProximityNodeID(null);
+      }
+      entries.set(i, entry);
+    }
+    List<ChordID<InetAddress>> list = new ArrayList<>(successorList);
+    list.remove(nodeID);
+    return new RoutingState(predecessor, new FingerTable(entries), list);
+  }
+}
@@ -1,69 +1,169 @@
 package edu.ncsu.chord;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 
 /**
  * Created by amit on 14/2/17. The class for providing function on Hash value.
+ *
+ * Inputs are hashed with ChordConfig.HASH_FUNCTION, which is SHA-256 unless configured otherwise.
+ * The class is named after the only function IDs were once made with; IDs of every HashFunction
+ * are instances of it.
+ *
+ * Hashes are Externalizable: only the width and the MAX_BITS / 8 bytes that make up the value are
+ * written, instead of default serialization's field names and types.
  */
-public class SHA256Hash implements Hash, Serializable {
+public class SHA256Hash implements Hash, Externalizable {
+
+  /* Widest ID supported. Hash values are kept in three 64 bit words */
+  public static final int MAX_SUPPORTED_BITS = 160;
 
   /* The actual generated hashValue
-  * This value is stored as long for now. can be changed to BigInteger
-  * later. So do not use these values directly. Always use class methods */
+  * This value is stored in three fixed width words: hashValue holds the lowest 64 bits,
+  * hashValueMid the next 64 and hashValueHigh the rest. When MAX_BITS is less than 64 only
+  * hashValue is used. So do not use these values directly. Always use class methods */
   private long hashValue;
+  private long hashValueMid;
+  private long hashValueHigh;
 
   /* Depending on CHORD_ID_MAX_BITS in each ChordID will be calculated. This is also used in finger table */
   private int MAX_BITS = -1;
 
-  /* A MOD of every generated dht value is calculated to keep all ChordID in circular topology */
-  private long MOD;
-
   /* Keep all loggers transient so that they are not passed over RMI call */
   private final transient static Logger logger = Logger.getLogger(SHA256Hash.class);
 
   public SHA256Hash(String input, int MAX_BITS) {
+    this(input, MAX_BITS, ChordConfig.HASH_FUNCTION);
+  }
+
+  /* Hashes input with function instead of the configured one */
+  SHA256Hash(String input, int MAX_BITS, HashFunction function) {
     /* Hash the input string, take first CHORD_ID_MAX_BITS from that */
-    this.MAX_BITS = MAX_BITS;
-    MOD = (long) Math.pow(2, MAX_BITS);
-    hashValue = hash(input) % MOD;
-    logger.debug(" Hash input: " + input +
-                 " Generated hash: " + hashValue);
+    this(0, 0, 0, MAX_BITS);
+    hash(input, function);
+    if (logger.isDebugEnabled()) {
+      logger.debug(" Hash input: " + input +
+                   " Generated hash: " + getValue());
+    }
   }
 
-  private SHA256Hash(long value, int MAX_BITS) {
+  /* Only for deserialization, readExternal fills in the value */
+  public SHA256Hash() {
+  }
+
+  /* Builds a hash from its words, e.g. one received over the wire, without hashing anything */
+  SHA256Hash(long high, long mid, long low, int MAX_BITS) {
+    if (MAX_BITS < 1 || MAX_BITS > MAX_SUPPORTED_BITS) {
+      throw new IllegalArgumentException("Unsupported ID width " + MAX_BITS);
+    }
     this.MAX_BITS = MAX_BITS;
-    MOD = (long) Math.pow(2, MAX_BITS);
-    hashValue = value;
+    hashValue = low & wordMask(0);
+    hashValueMid = mid & wordMask(1);
+    hashValueHigh = high & wordMask(2);
+  }
+
+  private void hash(String input, HashFunction function) {
+    /* Keep only the low MAX_BITS bits of the generated hash */
+    long[] words = new long[3];
+    function.hash(input, MAX_BITS, words);
+    hashValue = words[0] & wordMask(0);
+    hashValueMid = words[1] & wordMask(1);
+    hashValueHigh = words[2] & wordMask(2);
+  }
+
+  /* Raw words and width of this hash, used to encode it for the wire */
+  long getHighWord() {
+    return hashValueHigh;
+  }
+
+  long getMidWord() {
+    return hashValueMid;
+  }
+
+  long getLowWord() {
+    return hashValue;
+  }
+
+  int getBits() {
+    return MAX_BITS;
+  }
+
+  /* Number of bytes needed to hold a MAX_BITS wide value */
+  private int byteCount() {
+    return (MAX_BITS + 7) / 8;
+  }
+
+  /* i'th byte of the value, 0 being the lowest */
+  private long valueByte(int i) {
+    long word = i < 8 ? hashValue : i < 16 ? hashValueMid : hashValueHigh;
+    return (word >>> (8 * (i % 8))) & 0xFF;
   }
 
-  private long hash(String input) {
-    BigInteger hash = null;
-    try {
-      MessageDigest hasher = MessageDigest.getInstance("SHA-256");
-      hasher.update(input.getBytes("UTF-8"));
-      byte[] hashBytes = hasher.digest();
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeByte(MAX_BITS);
+    for (int i = byteCount() - 1; i >= 0; i--) {
+      out.writeByte((int) valueByte(i));
+    }
+  }
 
-      /* Get first 'CHORD_ID_MAX_BITS' from generated hash */
-      hashBytes = Arrays.copyOfRange(hashBytes, 0, MAX_BITS / 8 + 1);
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    MAX_BITS = in.readUnsignedByte();
+    if (MAX_BITS < 1 || MAX_BITS > MAX_SUPPORTED_BITS) {
+      throw new InvalidObjectException("Unsupported ID width " + MAX_BITS);
+    }
+    long low = 0, mid = 0, high = 0;
+    for (int i = byteCount() - 1; i >= 0; i--) {
+      long b = in.readUnsignedByte();
+      if (i < 8) {
+        low |= b << (8 * i);
+      } else if (i < 16) {
+        mid |= b << (8 * (i - 8));
+      } else {
+        high |= b << (8 * (i - 16));
+      }
+    }
+    hashValue = low & wordMask(0);
+    hashValueMid = mid & wordMask(1);
+    hashValueHigh = high & wordMask(2);
+  }
 
-      hash = new BigInteger(1, hashBytes);
-      //return String.format("%064x", new BigInteger(1, digest));
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      /* TODO: If CHORD_ID_MAX_BITS is more than 32/64 then longValue will overflow. Check it later */
-      return hash.longValue();
+  /* Mask of the bits of given word (0 is the lowest) that are part of a MAX_BITS wide value */
+  private long wordMask(int word) {
+    int wordBits = MAX_BITS - 64 * word;
+    if (wordBits >= 64) {
+      return -1L;
+    } else if (wordBits <= 0) {
+      return 0L;
     }
+    return (1L << wordBits) - 1;
+  }
+
+  /* IDs narrower than 64 bits fit in a single non negative long and take the fast paths */
+  private boolean isNarrow() {
+    return MAX_BITS < 64;
   }
 
   @Override
   public String getValue() {
-    return Long.toString(hashValue);
+    if (hashValueHigh == 0 && hashValueMid == 0 && hashValue >= 0) {
+      return Long.toString(hashValue);
+    }
+    /* Only used for display, arithmetic never goes through BigInteger */
+    byte[] bytes = new byte[25];
+    for (int i = 0; i < 8; i++) {
+      bytes[24 - i] = (byte) (hashValue >>> (8 * i));
+      bytes[16 - i] = (byte) (hashValueMid >>> (8 * i));
+      bytes[8 - i] = (byte) (hashValueHigh >>> (8 * i));
+    }
+    return new BigInteger(bytes).toString();
   }
 
 
@@ -73,24 +173,41 @@ public class SHA256Hash implements Hash, Serializable {
    */
   @Override
   public Hash next(int n) {
-    if (n >= 0 && n <= MAX_BITS) {
-      return new SHA256Hash((hashValue + (long) Math.pow(2, n)) % MOD, MAX_BITS);
+    if (n < 0 || n > MAX_BITS) {
+      return new SHA256Hash(hashValueHigh, hashValueMid, hashValue, MAX_BITS);
+    }
+    if (isNarrow()) {
+      return new SHA256Hash(0, 0, RingMath.addPowerOfTwo(hashValue, n, wordMask(0)), MAX_BITS);
     }
-    return new SHA256Hash(hashValue, MAX_BITS);
+    /* Add 2^n word by word, carrying into the next word */
+    long low = hashValue + (n < 64 ? 1L << n : 0);
+    long carry = RingMath.carry(hashValue, low);
+    long mid = hashValueMid + (n >= 64 && n < 128 ? 1L << (n - 64) : 0) + carry;
+    carry = RingMath.carry(hashValueMid, mid);
+    long high = hashValueHigh + (n >= 128 ? 1L << (n - 128) : 0) + carry;
+    return new SHA256Hash(high, mid, low, MAX_BITS);
   }
 
   public String toString() {
     return getValue();
   }
 
+  /* Raw value of any Hash. Only falls back to parsing for Hash implementations other than this */
+  private static long valueOf(Hash h) {
+    if (h instanceof SHA256Hash) {
+      return ((SHA256Hash) h).hashValue;
+    }
+    return Long.parseLong(h.getValue());
+  }
+
   @Override
   public int compareTo(Hash h) {
-    if (this.hashValue < Long.parseLong(h.getValue())) {
-      return -1;
-    } else if (this.hashValue > Long.parseLong(h.getValue())) {
-      return 1;
+    if (isNarrow()) {
+      return Long.compare(this.hashValue, valueOf(h));
     }
-    return 0;
+    SHA256Hash other = (SHA256Hash) h;
+    return RingMath.compare(hashValueHigh, hashValueMid, hashValue,
+			    other.hashValueHigh, other.hashValueMid, other.hashValue);
   }
 
 
@@ -99,42 +216,65 @@ public class SHA256Hash implements Hash, Serializable {
   public boolean inRange(Hash rangeStart, Hash rangeEnd, boolean startInclusive,
 			 boolean endInclusive) {
     /* Ranges can have bigger start and smaller end value due to mod */
-    /* TODO: this casting can give runtime execption find a way out later */
-    SHA256Hash start = new SHA256Hash(((SHA256Hash) rangeStart).hashValue, MAX_BITS);
-    SHA256Hash end = new SHA256Hash(((SHA256Hash) rangeEnd).hashValue, MAX_BITS);
-
-    /* If start = x and end = x + 1 and startInclusive is false & endInclusive is false
-     * then nothing can be inRange of this interval */
-    if (start.hashValue + 1 == end.hashValue && !startInclusive && !endInclusive) {
-      return false;
+    if (isNarrow()) {
+      return RingMath.inRange(hashValue, valueOf(rangeStart), valueOf(rangeEnd),
+			      startInclusive, endInclusive, wordMask(0));
     }
+    return inRangeWide((SHA256Hash) rangeStart, (SHA256Hash) rangeEnd, startInclusive, endInclusive);
+  }
 
-    if (!startInclusive) {
-      start.hashValue = (start.hashValue + 1) % MOD;
+  /**
+   * Wide version of inRange. Works on clockwise distances from start, so an interval wrapping
+   * around zero needs no special handling: this lies in the interval if its distance from start is
+   * less than the distance of end from start.
+   */
+  private boolean inRangeWide(SHA256Hash start, SHA256Hash end, boolean startInclusive,
+			      boolean endInclusive) {
+    long endBorrowLow = RingMath.borrow(end.hashValue, start.hashValue, 0);
+    long endBorrowMid = RingMath.borrow(end.hashValueMid, start.hashValueMid, endBorrowLow);
+    long endLow = (end.hashValue - start.hashValue) & wordMask(0);
+    long endMid = (end.hashValueMid - start.hashValueMid - endBorrowLow) & wordMask(1);
+    long endHigh = (end.hashValueHigh - start.hashValueHigh - endBorrowMid) & wordMask(2);
+
+    long borrowLow = RingMath.borrow(hashValue, start.hashValue, 0);
+    long borrowMid = RingMath.borrow(hashValueMid, start.hashValueMid, borrowLow);
+    long low = (hashValue - start.hashValue) & wordMask(0);
+    long mid = (hashValueMid - start.hashValueMid - borrowLow) & wordMask(1);
+    long high = (hashValueHigh - start.hashValueHigh - borrowMid) & wordMask(2);
+
+    boolean atStart = (low | mid | high) == 0;
+    if ((endLow | endMid | endHigh) == 0) {
+      /* start == end: [x, x] is a single point, (x, x) is everything but x, rest is whole ring */
+      if (startInclusive && endInclusive) {
+        return atStart;
+      } else if (!startInclusive && !endInclusive) {
+        return !atStart;
+      }
+      return true;
     }
-    if (!endInclusive) {
-      end.hashValue = (end.hashValue - 1) % MOD;
+    if (atStart) {
+      return startInclusive;
     }
-
-    if (end.compareTo(start) == 0) {
-      return end.compareTo(this) == 0;
-    } else if (end.compareTo(start) < 0) {
-      return !(end.compareTo(this) < 0 && this.compareTo(start) < 0);
-    } else {
-      return (start.compareTo(this) <= 0 && this.compareTo(end) <= 0);
+    int compareToEnd = RingMath.compare(high, mid, low, endHigh, endMid, endLow);
+    if (compareToEnd == 0) {
+      return endInclusive;
     }
+    return compareToEnd < 0;
   }
 
   @Override
   public boolean equals(Object o) {
+    if (o == this)
+      return true;
     if (o == null || !(o instanceof SHA256Hash))
       return false;
     SHA256Hash hash = (SHA256Hash) o;
-    return (hash.hashValue == this.hashValue);
+    return hash.hashValue == this.hashValue && hash.hashValueMid == this.hashValueMid
+           && hash.hashValueHigh == this.hashValueHigh;
   }
 
   @Override
   public int hashCode() {
-    return (int) (hashValue * 31 + MOD * 11 + MAX_BITS);
+    return (int) (hashValue * 31 + hashValueMid * 17 + hashValueHigh * 13 + MAX_BITS);
   }
 }
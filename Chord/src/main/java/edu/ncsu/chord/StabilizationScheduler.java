@@ -0,0 +1,136 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs stabilize and fixFingers on all virtual nodes of a session. While rounds change nothing in
+ * the routing state the period doubles up to STABILIZER_MAX_PERIOD. Any routing change, either
+ * found by a round or caused by a notify from another node, brings it back to STABILIZER_PERIOD.
+ * Every delay is jittered so that nodes started together do not stabilize in lock step.
+ */
+class StabilizationScheduler {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(StabilizationScheduler.class);
+
+  private final List<ChordNode> nodes;
+
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "stabilizer"));
+
+  private final long basePeriodMillis = TimeUnit.SECONDS.toMillis(ChordConfig.STABILIZER_PERIOD);
+
+  private final long maxPeriodMillis =
+      Math.max(basePeriodMillis, TimeUnit.SECONDS.toMillis(ChordConfig.STABILIZER_MAX_PERIOD));
+
+  /* Period used for scheduling next round, before jitter is applied */
+  private long currentPeriodMillis = basePeriodMillis;
+
+  /* Sum of routing versions of all nodes as seen after previous round */
+  private long lastRoutingVersion = -1;
+
+  private ScheduledFuture<?> nextRound;
+
+  StabilizationScheduler(List<ChordNode> nodes) {
+    this.nodes = nodes;
+    for (ChordNode node : nodes) {
+      node.setRoutingChangeListener(this::wakeUp);
+    }
+  }
+
+  synchronized void start() {
+    schedule(TimeUnit.SECONDS.toMillis(ChordConfig.STABILIZER_INITIAL_DELAY));
+  }
+
+  /**
+   * Stops scheduling rounds and waits up to ChordConfig.STABILIZER_STOP_TIMEOUT seconds for a round
+   * already running to finish, so that callers like ChordNode.leave do not overlap with it.
+   *
+   * @return false if the running round did not finish in time
+   */
+  boolean stop() {
+    executor.shutdownNow();
+    try {
+      return executor.awaitTermination(ChordConfig.STABILIZER_STOP_TIMEOUT, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Runs task on the stabilizer thread between two rounds and waits for it, so that no round runs
+   * on a node while task changes it. Must not be called from the stabilizer thread itself.
+   */
+  <T> T runBetweenRounds(Callable<T> task) throws InterruptedException, ExecutionException {
+    return executor.submit(task).get();
+  }
+
+  synchronized long getCurrentPeriodMillis() {
+    return currentPeriodMillis;
+  }
+
+  /**
+   * Brings the scheduler back to fast rounds. If next round is further away than the base period
+   * it is moved closer.
+   */
+  synchronized void wakeUp() {
+    currentPeriodMillis = basePeriodMillis;
+    if (nextRound != null && nextRound.getDelay(TimeUnit.MILLISECONDS) > basePeriodMillis
+        && nextRound.cancel(false)) {
+      schedule(basePeriodMillis);
+    }
+  }
+
+  private void runRound() {
+    long roundStart = System.nanoTime();
+    for (ChordNode node : nodes) {
+      try {
+        node.stabilize();
+        node.fixFingers();
+        node.printNode();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+    ChordMetrics.recordStabilizationRound(roundStart);
+
+    long routingVersion = 0;
+    for (ChordNode node : nodes) {
+      routingVersion += node.getRoutingVersion();
+    }
+
+    synchronized (this) {
+      if (routingVersion == lastRoutingVersion) {
+        currentPeriodMillis = Math.min(currentPeriodMillis * 2, maxPeriodMillis);
+      } else {
+        currentPeriodMillis = basePeriodMillis;
+      }
+      lastRoutingVersion = routingVersion;
+      logger.debug("Next stabilization round in about " + currentPeriodMillis + " ms");
+      schedule(currentPeriodMillis);
+    }
+  }
+
+  private void schedule(long periodMillis) {
+    if (executor.isShutdown()) {
+      return;
+    }
+    nextRound = executor.schedule(this::runRound, jitter(periodMillis), TimeUnit.MILLISECONDS);
+  }
+
+  /* Spreads delay uniformly over +/- STABILIZER_JITTER of period */
+  private static long jitter(long periodMillis) {
+    double spread = ChordConfig.STABILIZER_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Math.max(0, Math.round(periodMillis * (1 + spread)));
+  }
+}
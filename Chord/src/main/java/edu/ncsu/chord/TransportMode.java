@@ -0,0 +1,11 @@
+package edu.ncsu.chord;
+
+/**
+ * Transports chord nodes use to call each other.
+ * RMI - Java RMI, every call looked up through the registry of the remote node.
+ * NIO - Binary protocol over non blocking sockets, one multiplexed connection per peer machine.
+ */
+enum TransportMode {
+  RMI,
+  NIO
+}
@@ -0,0 +1,194 @@
+package edu.ncsu.chord;
+
+import org.apache.log4j.Logger;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers upcall events of one ChordNode to its UpcallEventHandler on a thread of its own, so that
+ * a slow handler (e.g. a bulk key transfer) does not hold up stabilization. Events are delivered in
+ * the order they happened. While an event is still queued, a following event of the same type
+ * replaces its new value, so a burst of successor or predecessor changes during churn reaches the
+ * handler as the net change. A NEW_SUCCESSOR or NEW_PREDECESSOR burst that ends where it started
+ * is dropped altogether.
+ */
+class UpcallDispatcher {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(UpcallDispatcher.class);
+
+  private static class PendingEvent {
+    final ChordID<InetAddress> virtualNodeID;
+    final Event event;
+    final ChordID<InetAddress> prevValue;
+    ChordID<InetAddress> newValue;
+
+    PendingEvent(ChordID<InetAddress> virtualNodeID, Event event,
+                 ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue) {
+      this.virtualNodeID = virtualNodeID;
+      this.event = event;
+      this.prevValue = prevValue;
+      this.newValue = newValue;
+    }
+  }
+
+  private final ArrayDeque<PendingEvent> queue = new ArrayDeque<>();
+
+  /* True while a drain task is queued or running on executor */
+  private boolean draining = false;
+
+  private volatile UpcallEventHandler handler;
+
+  /* Runs drain. Only one drain of this dispatcher is ever queued or running on it at a time */
+  private final Executor executor;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong handlerNanos = new AtomicLong();
+  private final AtomicLong maxHandlerNanos = new AtomicLong();
+
+  UpcallDispatcher() {
+    this(Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "upcall-dispatcher");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  /* Dispatcher delivering on executor, e.g. one shared by many nodes or the submitting thread */
+  UpcallDispatcher(Executor executor) {
+    this.executor = executor;
+  }
+
+  void setHandler(UpcallEventHandler handler) {
+    this.handler = handler;
+  }
+
+  void submit(ChordID<InetAddress> virtualNodeID, Event event,
+              ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue) {
+    submitted.incrementAndGet();
+    synchronized (this) {
+      PendingEvent last = lastPendingOfSide(event);
+      if (last != null && last.event == event) {
+        last.newValue = newValue;
+        coalesced.incrementAndGet();
+        if (isNewNeighbourEvent(event) && Objects.equals(last.prevValue, last.newValue)) {
+          queue.remove(last);
+        }
+        return;
+      }
+      queue.addLast(new PendingEvent(virtualNodeID, event, prevValue, newValue));
+      if (!draining) {
+        draining = true;
+        executor.execute(this::drain);
+      }
+    }
+  }
+
+  /* Hands keys of virtualNodeID over to successor on the calling thread, true if there is nothing
+  to hand over or the handler did it */
+  boolean handOff(ChordID<InetAddress> virtualNodeID, ChordID<InetAddress> predecessor,
+                  ChordID<InetAddress> successor) {
+    UpcallEventHandler currentHandler = handler;
+    if (currentHandler == null) {
+      return true;
+    }
+    try {
+      return currentHandler.handleLeave(virtualNodeID, predecessor, successor);
+    } catch (RuntimeException e) {
+      logger.error("Upcall handler failed to hand over keys of " + virtualNodeID, e);
+      return false;
+    }
+  }
+
+  /* Number of events waiting to be handled */
+  synchronized int getQueueDepth() {
+    return queue.size();
+  }
+
+  long getSubmitted() {
+    return submitted.get();
+  }
+
+  long getCoalesced() {
+    return coalesced.get();
+  }
+
+  long getDispatched() {
+    return dispatched.get();
+  }
+
+  /* Mean time the handler took per event */
+  double getAverageHandlerMillis() {
+    long count = dispatched.get();
+    return count == 0 ? 0.0 : handlerNanos.get() / 1e6 / count;
+  }
+
+  double getMaxHandlerMillis() {
+    return maxHandlerNanos.get() / 1e6;
+  }
+
+  public String toString() {
+    return "[queued=" + getQueueDepth() + ", submitted=" + getSubmitted() + ", coalesced="
+           + getCoalesced() + ", dispatched=" + getDispatched() + ", avgHandlerMs="
+           + String.format("%.2f", getAverageHandlerMillis()) + ", maxHandlerMs="
+           + String.format("%.2f", getMaxHandlerMillis()) + "]";
+  }
+
+  private void drain() {
+    while (true) {
+      PendingEvent pending;
+      synchronized (this) {
+        pending = queue.pollFirst();
+        if (pending == null) {
+          draining = false;
+          return;
+        }
+      }
+      UpcallEventHandler currentHandler = handler;
+      if (currentHandler == null) {
+        continue;
+      }
+      long start = System.nanoTime();
+      try {
+        currentHandler.handleEvent(pending.virtualNodeID, pending.event, pending.prevValue,
+                                   pending.newValue);
+      } catch (RuntimeException e) {
+        logger.error("Upcall handler failed for " + pending.event, e);
+      }
+      long elapsed = System.nanoTime() - start;
+      handlerNanos.addAndGet(elapsed);
+      maxHandlerNanos.accumulateAndGet(elapsed, Math::max);
+      dispatched.incrementAndGet();
+    }
+  }
+
+  /* Last queued event about the same neighbour (successor or predecessor) as event */
+  private PendingEvent lastPendingOfSide(Event event) {
+    boolean successorSide = isSuccessorEvent(event);
+    Iterator<PendingEvent> it = queue.descendingIterator();
+    while (it.hasNext()) {
+      PendingEvent pending = it.next();
+      if (isSuccessorEvent(pending.event) == successorSide) {
+        return pending;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isSuccessorEvent(Event event) {
+    return event == Event.NEW_SUCCESSOR || event == Event.SUCCESSOR_FAILED
+           || event == Event.SUCCESSOR_LEFT;
+  }
+
+  private static boolean isNewNeighbourEvent(Event event) {
+    return event == Event.NEW_SUCCESSOR || event == Event.NEW_PREDECESSOR;
+  }
+}
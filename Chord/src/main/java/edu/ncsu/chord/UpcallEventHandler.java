@@ -11,4 +11,25 @@ public interface UpcallEventHandler {
   // Node failure event will also be required by KeyStore module.
   void handleEvent(Event event,
                    ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue);
+
+  /* Same event, but also tells which of the virtual nodes hosted by this process it happened on.
+  Handlers that need to know the virtual node should override this one */
+  default void handleEvent(ChordID<InetAddress> virtualNodeID, Event event,
+                           ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue) {
+    handleEvent(event, prevValue, newValue);
+  }
+
+  /**
+   * Called when virtualNodeID is about to leave the ring, before its neighbours are told. Keys
+   * primary on virtualNodeID, i.e. those in (predecessor, virtualNodeID], should be handed over to
+   * successor, the node that takes them over. virtualNodeID takes no new keys from now on. Runs on
+   * the thread calling ChordSession.leave and must return only once successor has acknowledged the
+   * handoff.
+   *
+   * @return false if the handoff failed, in which case the node does not leave
+   */
+  default boolean handleLeave(ChordID<InetAddress> virtualNodeID, ChordID<InetAddress> predecessor,
+                              ChordID<InetAddress> successor) {
+    return true;
+  }
 }
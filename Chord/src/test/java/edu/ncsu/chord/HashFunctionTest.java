@@ -0,0 +1,63 @@
+package edu.ncsu.chord;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Pins the IDs each HashFunction gives. Every node and client of a cluster must agree on them, so
+ * any change here breaks existing clusters.
+ */
+public class HashFunctionTest {
+
+  /* Digest of "abc" is ba7816bf 8f01cfea 414140de 5dae2223 b00361a3 96177a9c ..., IDs keep the low
+  bits of its first bits / 8 + 1 bytes */
+  @Test
+  public void sha256KeepsLowBitsOfLeadingDigestBytes() {
+    assertId(0x7816bf8fL, 0x01cfea414140de5dL, 0xae2223b00361a396L,
+             new SHA256Hash("abc", 160, HashFunction.SHA256));
+    assertId(0, 0, 0x7816L, new SHA256Hash("abc", 16, HashFunction.SHA256));
+    assertId(0, 0, 0x7816bf8f01cfea41L, new SHA256Hash("abc", 64, HashFunction.SHA256));
+  }
+
+  @Test
+  public void sha256Vectors() {
+    assertId(0xb0c44298L, 0xfc1c149afbf4c899L, 0x6fb92427ae41e464L,
+             new SHA256Hash("", 160, HashFunction.SHA256));
+    assertId(0xf24dba5fL, 0xb0a30e26e83b2ac5L, 0xb9e29e1b161e5c1fL,
+             new SHA256Hash("hello", 160, HashFunction.SHA256));
+    assertId(0x334cf4c6L, 0x6799ae9ebda97581L, 0xec20e837c8d79c0fL,
+             new SHA256Hash("key-42", 160, HashFunction.SHA256));
+  }
+
+  /* Low and mid words are MurmurHash3 x64 128 of the UTF-16LE bytes, as Guava's
+  murmur3_128().hashBytes(input.getBytes(UTF_16LE)) gives them */
+  @Test
+  public void murmur3Utf16Vectors() {
+    assertId(0, 0, 0, new SHA256Hash("", 160, HashFunction.MURMUR3_UTF16));
+    assertId(0xf49cc7aeL, 0xb278c9bfc754677dL, 0x96a698500b4e98bdL,
+             new SHA256Hash("a", 160, HashFunction.MURMUR3_UTF16));
+    assertId(0x47e1ef54L, 0x7b927262d8c336c4L, 0xee2ee18fe1bfd387L,
+             new SHA256Hash("hello", 160, HashFunction.MURMUR3_UTF16));
+    /* Two full blocks and a tail of 3 chars */
+    assertId(0xb6ecc8b4L, 0xa2075d5b76f17479L, 0x407e326dad7960faL,
+             new SHA256Hash("0123456789abcdefXYZ", 160, HashFunction.MURMUR3_UTF16));
+    /* Chars outside ASCII hash as their UTF-16 units, not their UTF-8 bytes */
+    assertId(0x2a63de94L, 0x304b8a63ba8c85a2L, 0x9deec1e0aa679b4cL,
+             new SHA256Hash("\u043a\u043b\u044e\u0447-\u00e9\u4e2d", 160,
+                            HashFunction.MURMUR3_UTF16));
+  }
+
+  @Test
+  public void murmur3Utf16LeavesHighWordEmptyUpTo128Bits() {
+    assertId(0, 0x7b927262d8c336c4L, 0xee2ee18fe1bfd387L,
+             new SHA256Hash("hello", 128, HashFunction.MURMUR3_UTF16));
+    assertId(0, 0, 0xee2ee18fe1bfd387L, new SHA256Hash("hello", 64, HashFunction.MURMUR3_UTF16));
+  }
+
+  private static void assertId(long high, long mid, long low, SHA256Hash id) {
+    assertEquals(Long.toHexString(high), Long.toHexString(id.getHighWord()));
+    assertEquals(Long.toHexString(mid), Long.toHexString(id.getMidWord()));
+    assertEquals(Long.toHexString(low), Long.toHexString(id.getLowWord()));
+  }
+}
@@ -0,0 +1,145 @@
+package edu.ncsu.chord;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the word based ring arithmetic of SHA256Hash against BigInteger on random values. Words
+ * are often drawn from all zero, all one and sign bit patterns, so that carries and borrows cross
+ * word boundaries much more often than uniform values would make them.
+ */
+public class SHA256HashTest {
+
+  private static final int[] WIDTHS = {1, 63, 64, 65, 128, 160};
+
+  private static final int ROUNDS = 20000;
+
+  private final Random random = new Random(1);
+
+  @Test
+  public void valueMatchesBigInteger() {
+    for (int bits : WIDTHS) {
+      for (int i = 0; i < ROUNDS; i++) {
+        SHA256Hash id = randomId(bits);
+        assertEquals("width " + bits, toBig(id).toString(), id.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void compareToMatchesBigInteger() {
+    for (int bits : WIDTHS) {
+      for (int i = 0; i < ROUNDS; i++) {
+        SHA256Hash a = randomId(bits);
+        SHA256Hash b = random.nextInt(8) == 0 ? copy(a) : randomId(bits);
+        assertEquals(a + " vs " + b + ", width " + bits,
+                     Integer.signum(toBig(a).compareTo(toBig(b))), Integer.signum(a.compareTo(b)));
+      }
+    }
+  }
+
+  @Test
+  public void nextWrapsAndCarriesLikeBigInteger() {
+    for (int bits : WIDTHS) {
+      BigInteger ringSize = BigInteger.ONE.shiftLeft(bits);
+      for (int i = 0; i < ROUNDS; i++) {
+        SHA256Hash id = randomId(bits);
+        int n = random.nextInt(bits + 1);
+        BigInteger expected = toBig(id).add(BigInteger.ONE.shiftLeft(n)).mod(ringSize);
+        assertEquals(id + " + 2^" + n + ", width " + bits, expected,
+                     toBig((SHA256Hash) id.next(n)));
+      }
+    }
+  }
+
+  @Test
+  public void inRangeMatchesBigInteger() {
+    for (int bits : WIDTHS) {
+      BigInteger ringSize = BigInteger.ONE.shiftLeft(bits);
+      for (int i = 0; i < ROUNDS; i++) {
+        SHA256Hash start = randomId(bits);
+        SHA256Hash end = randomNear(start, bits);
+        SHA256Hash id = random.nextBoolean() ? randomNear(start, bits) : randomNear(end, bits);
+        boolean startInclusive = random.nextBoolean();
+        boolean endInclusive = random.nextBoolean();
+        boolean expected = inRange(toBig(id), toBig(start), toBig(end), startInclusive,
+                                   endInclusive, ringSize);
+        assertEquals(id + " in " + (startInclusive ? "[" : "(") + start + ", " + end
+                     + (endInclusive ? "]" : ")") + ", width " + bits,
+                     expected, id.inRange(start, end, startInclusive, endInclusive));
+      }
+    }
+  }
+
+  /* Reference inRange on clockwise distances from start. start == end is a single point when
+  both ends are inclusive, all but that point when both are exclusive and the whole ring otherwise */
+  private static boolean inRange(BigInteger id, BigInteger start, BigInteger end,
+                                 boolean startInclusive, boolean endInclusive, BigInteger ringSize) {
+    BigInteger distance = id.subtract(start).mod(ringSize);
+    BigInteger endDistance = end.subtract(start).mod(ringSize);
+    if (endDistance.signum() == 0) {
+      if (startInclusive && endInclusive) {
+        return distance.signum() == 0;
+      } else if (!startInclusive && !endInclusive) {
+        return distance.signum() != 0;
+      }
+      return true;
+    }
+    if (distance.signum() == 0) {
+      return startInclusive;
+    }
+    int compareToEnd = distance.compareTo(endDistance);
+    return compareToEnd == 0 ? endInclusive : compareToEnd < 0;
+  }
+
+  private SHA256Hash randomId(int bits) {
+    return new SHA256Hash(randomWord(), randomWord(), randomWord(), bits);
+  }
+
+  /* Often lands on or next to id, where the ends of intervals are decided */
+  private SHA256Hash randomNear(SHA256Hash id, int bits) {
+    switch (random.nextInt(4)) {
+      case 0:
+        return copy(id);
+      case 1:
+        return (SHA256Hash) id.next(0);
+      case 2:
+        return (SHA256Hash) id.next(random.nextInt(bits + 1));
+      default:
+        return randomId(bits);
+    }
+  }
+
+  private long randomWord() {
+    switch (random.nextInt(6)) {
+      case 0:
+        return 0L;
+      case 1:
+        return -1L;
+      case 2:
+        return Long.MIN_VALUE;
+      case 3:
+        return Long.MAX_VALUE;
+      default:
+        return random.nextLong();
+    }
+  }
+
+  private static SHA256Hash copy(SHA256Hash id) {
+    return new SHA256Hash(id.getHighWord(), id.getMidWord(), id.getLowWord(), id.getBits());
+  }
+
+  private static BigInteger toBig(SHA256Hash id) {
+    return unsigned(id.getHighWord()).shiftLeft(128)
+        .or(unsigned(id.getMidWord()).shiftLeft(64))
+        .or(unsigned(id.getLowWord()));
+  }
+
+  private static BigInteger unsigned(long word) {
+    return new BigInteger(Long.toUnsignedString(word));
+  }
+}
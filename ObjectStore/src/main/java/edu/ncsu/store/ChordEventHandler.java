@@ -7,6 +7,7 @@ import java.rmi.RemoteException;
 import java.util.*;
 
 import edu.ncsu.chord.ChordID;
+import edu.ncsu.chord.ChordSession;
 import edu.ncsu.chord.Event;
 import edu.ncsu.chord.UpcallEventHandler;
 
@@ -18,11 +19,21 @@ public class ChordEventHandler implements UpcallEventHandler {
   /* Keep all loggers transient so that they are not passed over RMI call */
   private final transient static Logger logger = Logger.getLogger(ChordEventHandler.class);
 
-  public void moveKeystoNewPredecessor(ChordID<InetAddress> prevPredecessor,
+  public void moveKeystoNewPredecessor(ChordID<InetAddress> virtualNodeID,
+                                       ChordID<InetAddress> prevPredecessor,
 				       ChordID<InetAddress> newPredecessor) {
-    logger.info("Handler called in " + ObjectStoreService.getChordSession().getChordNodeID()
+    logger.info("Handler called in " + virtualNodeID
 		+ " New predecessor is: " + newPredecessor);
 
+    /* Virtual nodes of this process share one store, so nothing has to move between them */
+    if (newPredecessor.getKey().equals(virtualNodeID.getKey())) {
+      return;
+    }
+    if (!ObjectStoreService.getChordSession().isAlive(newPredecessor)) {
+      logger.error("New predecessor " + newPredecessor + " is suspected to have failed, not moving keys");
+      return;
+    }
+
       /* Go through all keys of localStorage and see if we have any keys that needs to be
       moved to this new predecessor.*/
     ObjectStore store = ObjectStoreService.getStore();
@@ -35,7 +46,7 @@ public class ChordEventHandler implements UpcallEventHandler {
         // This key ID is either a replica or belongs to new predecessor
         // This key needs to be moved to new predecessor.
 
-          misplacedObjects.put(km, store.getObject(km.key));
+          misplacedObjects.put(km, store.getLocalObject(km.key));
       }
     }
 
@@ -46,7 +57,9 @@ public class ChordEventHandler implements UpcallEventHandler {
     ObjectStoreOperations
 	predecessorStore =
 	StoreRMIUtils.getRemoteObjectStore(newPredecessor.getKey());
-      predecessorStore.putObjects(misplacedObjects);
+      if (predecessorStore == null || !predecessorStore.putObjects(misplacedObjects)) {
+        logger.error("Unable to move " + misplacedObjects.size() + " keys to " + newPredecessor);
+      }
       // If above operation did not throw an exception
       // only then delete those keys from your storage
       //store.deleteKeys(new ArrayList<>(misplacedObjects.keySet()));
@@ -55,10 +68,11 @@ public class ChordEventHandler implements UpcallEventHandler {
     }
   }
 
-  public void moveKeystoNewSuccessor(ChordID<InetAddress> prevSuccessor,
-                                       ChordID<InetAddress> newSuccessor) {
+  public void moveKeystoNewSuccessor(ChordID<InetAddress> virtualNodeID,
+                                     ChordID<InetAddress> prevSuccessor,
+                                     ChordID<InetAddress> newSuccessor) {
     // move all the keys with replicaNumber != StoreConfig.REPLICATION_COUNT to this new successor
-    logger.info("Handler called in " + ObjectStoreService.getChordSession().getChordNodeID()
+    logger.info("Handler called in " + virtualNodeID
                 + " New successor is: " + newSuccessor);
 
     /* Go through all keys of localStorage and see if we have any keys that needs to bb
@@ -72,23 +86,34 @@ public class ChordEventHandler implements UpcallEventHandler {
     try {
     List<KeyMetadata> allKeys = store.keySet();
     Map<KeyMetadata, byte[]> replicableKeys = new HashMap();
+    ChordSession session = ObjectStoreService.getChordSession();
     for (KeyMetadata km : allKeys) {
-      if (km.replicaNumber != StoreConfig.REPLICATION_COUNT) {
+      /* Keys held by other virtual nodes of this process are not replicated through this successor */
+      if (km.replicaNumber != StoreConfig.REPLICATION_COUNT &&
+          session.getHoldingVirtualNode(km.key).equals(virtualNodeID)) {
         // This key ID needs be further replicated
         KeyMetadata newKm = new KeyMetadata(km.key);
         newKm.setReplicaNumber(km.replicaNumber + 1);
-          replicableKeys.put(newKm, store.getObject(km.key));
+          replicableKeys.put(newKm, store.getLocalObject(km.key));
       }
     }
     logger.info("Number of keys that can be replicated: " + replicableKeys.size());
     // TODO: remove below log statement after debugging is done
     logger.info("About to replicate below keys: " + new ArrayList<>(replicableKeys.keySet()));
     // Start key movement. First get remote object for predecessor object store
+    ChordID<InetAddress> replicationSuccessor = session.getReplicationSuccessor(virtualNodeID);
+    if (!session.isAlive(replicationSuccessor)) {
+      logger.error("Successor " + replicationSuccessor + " is suspected to have failed, not replicating");
+      return;
+    }
     ObjectStoreOperations
         successorStore =
-        StoreRMIUtils.getRemoteObjectStore(newSuccessor.getKey());
+        StoreRMIUtils.getRemoteObjectStore(replicationSuccessor.getKey());
 
-      successorStore.makeReplicas(replicableKeys);
+      if (successorStore == null || !successorStore.makeReplicas(replicableKeys)) {
+        logger.error("Unable to replicate " + replicableKeys.size() + " keys on "
+                     + replicationSuccessor);
+      }
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -105,15 +130,16 @@ public class ChordEventHandler implements UpcallEventHandler {
 
   }
 
-  public void replicateKeysofFailedPredecessor(ChordID<InetAddress> prevPredecessor,
-                                     ChordID<InetAddress> newPredecessor) {
+  public void replicateKeysofFailedPredecessor(ChordID<InetAddress> virtualNodeID,
+                                               ChordID<InetAddress> prevPredecessor,
+                                               ChordID<InetAddress> newPredecessor) {
     /** replicateKeysofFailedPredecessor:
      *  When predecessor fails, you need to call replicate Keys on all the
      *  keys with replicaNumber == 2. (keys with replicaNumber == 2 are the keys
      *  which had failed predecessor as primary node)
      *  */
     // move all the keys with replicaNumber != StoreConfig.REPLICATION_COUNT to this new successor
-    logger.info("Handler called in " + ObjectStoreService.getChordSession().getChordNodeID()
+    logger.info("Handler called in " + virtualNodeID
                 + " failed predecessor is: " + prevPredecessor);
 
     /* Go through all keys of localStorage and see if we have any keys that needs to bb
@@ -122,16 +148,17 @@ public class ChordEventHandler implements UpcallEventHandler {
     try {
     List<KeyMetadata> allKeys = store.keySet();
     Map<KeyMetadata, byte[]> replicableKeys = new HashMap();
+    ChordSession session = ObjectStoreService.getChordSession();
     for (KeyMetadata km : allKeys) {
       /* Second replicas are the keys whose primary node failed - now you are the primary node for those */
-      if (km.replicaNumber == 2 ) {
+      if (km.replicaNumber == 2 && session.getHoldingVirtualNode(km.key).equals(virtualNodeID)) {
         // This key ID can be further replicated
         km.replicaNumber = 1;
         // Create new keyMetadata for replication
         KeyMetadata newKm = new KeyMetadata(km.key);
         newKm.setReplicaNumber(km.replicaNumber + 1);
 
-          replicableKeys.put(newKm, store.getObject(km.key));
+          replicableKeys.put(newKm, store.getLocalObject(km.key));
 
       }
     }
@@ -139,14 +166,91 @@ public class ChordEventHandler implements UpcallEventHandler {
     // TODO: remove below log statement after debugging is done
     logger.info("About to replicate below keys: " + new ArrayList<>(replicableKeys.keySet()));
     // Start key movement. First get remote object for predecessor object store
+    ChordID<InetAddress> replicationSuccessor = session.getReplicationSuccessor(virtualNodeID);
+    if (!session.isAlive(replicationSuccessor)) {
+      logger.error("Successor " + replicationSuccessor + " is suspected to have failed, not replicating");
+      return;
+    }
     ObjectStoreOperations successorStore =
-        StoreRMIUtils.getRemoteObjectStore(ObjectStoreService.getChordSession().getSelfSuccessor().getKey());
+        StoreRMIUtils.getRemoteObjectStore(replicationSuccessor.getKey());
+
+      if (successorStore == null || !successorStore.makeReplicas(replicableKeys)) {
+        logger.error("Unable to replicate " + replicableKeys.size() + " keys on "
+                     + replicationSuccessor);
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+
+  }
 
-      successorStore.makeReplicas(replicableKeys);
+  /**
+   * Hands keys primary on a leaving virtual node, those in (predecessor, virtualNodeID], over to
+   * successor as primary copies. Keys moved away earlier are still stored here as first copies, the
+   * range keeps them out. successor stores the keys and replicates them further on, so replication
+   * is back in place before the neighbours are told about the leave. Once all keys are handed
+   * over they are kept here as last copies only.
+   */
+  @Override
+  public boolean handleLeave(ChordID<InetAddress> virtualNodeID, ChordID<InetAddress> predecessor,
+                             ChordID<InetAddress> successor) {
+    /* Virtual nodes of this process share one store, so nothing has to move between them */
+    if (successor.getKey().equals(virtualNodeID.getKey())) {
+      return true;
+    }
+    ObjectStore store = ObjectStoreService.getStore();
+    try {
+      ObjectStoreOperations successorStore = null;
+      Set<ChordID<String>> handedOver = new HashSet<>();
+      /* The node takes no new keys while leaving, but a write that got past the ownership check
+      just before may land after the first pass. The second pass hands those over */
+      for (int pass = 0; pass < 2; pass++) {
+        Map<KeyMetadata, byte[]> primaryKeys = new HashMap<>();
+        for (KeyMetadata km : store.keySet()) {
+          if (km.replicaNumber == 1 && km.key.inRange(predecessor, virtualNodeID, false, true)
+              && !handedOver.contains(km.key)) {
+            KeyMetadata newKm = new KeyMetadata(km.key);
+            newKm.setReplicaNumber(1);
+            primaryKeys.put(newKm, store.getLocalObject(km.key));
+          }
+        }
+        logger.info("Handing " + primaryKeys.size() + " keys of " + virtualNodeID + " over to "
+                    + successor);
+        if (primaryKeys.isEmpty()) {
+          break;
+        }
+        if (successorStore == null) {
+          successorStore = StoreRMIUtils.getRemoteObjectStore(successor.getKey());
+        }
+        if (successorStore == null || !successorStore.putObjects(primaryKeys)) {
+          return false;
+        }
+        for (KeyMetadata km : primaryKeys.keySet()) {
+          handedOver.add(km.key);
+        }
+      }
+      store.demoteLocalObjects(handedOver);
+      return true;
     } catch (Exception e) {
       e.printStackTrace();
+      return false;
     }
+  }
 
+  /* Keep ring snapshot used by StoreClientAPIImpl in sync with stabilization */
+  private void updateRingCache(Event updateEvent,
+                               ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue) {
+    RingSnapshotCache ringCache = ObjectStoreService.getRingCache();
+    if (ObjectStoreService.getChordSession() != null) {
+      for (List<ChordID<InetAddress>> segment : ObjectStoreService.getChordSession().getRingSegments()) {
+        ringCache.addSegment(segment);
+      }
+    }
+    /* Failed node may still be present in successor lists, so remove it after adding them */
+    if (updateEvent == Event.SUCCESSOR_FAILED || updateEvent == Event.PREDECESSOR_FAILED
+        || updateEvent == Event.SUCCESSOR_LEFT || updateEvent == Event.PREDECESSOR_LEFT) {
+      ringCache.invalidate(prevValue);
+    }
   }
 
   /* preValue and newValue will contain old and updated values of predecessor/successor depending on the event
@@ -155,6 +259,8 @@ public class ChordEventHandler implements UpcallEventHandler {
   * 2.NEW_SUCCESSOR,
   * 3.PREDECESSOR_FAILED,
   * 4.NEW_PREDECESSOR
+  * 5.SUCCESSOR_LEFT,
+  * 6.PREDECESSOR_LEFT (a neighbour left gracefully, after handing its keys over in handleLeave)
   *
   * Note a SUCCESSOR FAILED or PREDECSSOR_FAILED even will most probably be always followed by
   * NEW_SUCCESSOR or NEW_PREDECESSOR event so if key movement is being done on these events then you can
@@ -166,21 +272,38 @@ public class ChordEventHandler implements UpcallEventHandler {
   @Override
   public void handleEvent(Event updateEvent,
                           ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue) {
+    handleEvent(ObjectStoreService.getChordSession().getChordNodeID(), updateEvent, prevValue, newValue);
+  }
+
+  /* Same as above, virtualNodeID is the virtual node of this process whose neighbour changed */
+  @Override
+  public void handleEvent(ChordID<InetAddress> virtualNodeID, Event updateEvent,
+                          ChordID<InetAddress> prevValue, ChordID<InetAddress> newValue) {
+    updateRingCache(updateEvent, prevValue, newValue);
     switch (updateEvent) {
       case NEW_PREDECESSOR: {
-        moveKeystoNewPredecessor(prevValue, newValue);
+        moveKeystoNewPredecessor(virtualNodeID, prevValue, newValue);
         break;
       }
       case NEW_SUCCESSOR: {
-        moveKeystoNewSuccessor(prevValue, newValue);
+        moveKeystoNewSuccessor(virtualNodeID, prevValue, newValue);
         break;
       }
       case PREDECESSOR_FAILED: {
-        replicateKeysofFailedPredecessor(prevValue, newValue);
+        replicateKeysofFailedPredecessor(virtualNodeID, prevValue, newValue);
         break;
       }
       case SUCCESSOR_FAILED: {
-        moveKeystoNewSuccessor(prevValue, newValue);
+        moveKeystoNewSuccessor(virtualNodeID, prevValue, newValue);
+        break;
+      }
+      case SUCCESSOR_LEFT: {
+        /* Replicas the leaving node held for us have to be made on the new successor */
+        moveKeystoNewSuccessor(virtualNodeID, prevValue, newValue);
+        break;
+      }
+      case PREDECESSOR_LEFT: {
+        /* Leaving predecessor has handed its keys over already */
         break;
       }
       default:
@@ -2,15 +2,26 @@ package edu.ncsu.store;
 
 import edu.ncsu.chord.ChordID;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 /**
  * Holds the key and metadata about that key in database. Currently, we use this
  * mostly to hold the replica number of this key. However, other values can also be
  * added into this object. This object will be stored along with every key.
+ * Maps of these are shipped to other stores on replication, so they are written compactly: the key
+ * inline, without a class descriptor of its own, followed by the replica number.
  */
-public class KeyMetadata {
+public class KeyMetadata implements Externalizable {
     ChordID<String> key; // the key whose metadata this is
     int replicaNumber; // replica number of this key
 
+    /* Only for deserialization, readExternal fills in the fields */
+    public KeyMetadata() {
+    }
+
     public KeyMetadata(ChordID<String> key) {
         this.key = key;
     }
@@ -27,6 +38,20 @@ public class KeyMetadata {
         return key;
     }
 
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        key.writeExternal(out);
+        /* Replica numbers never exceed StoreConfig.REPLICATION_COUNT */
+        out.writeByte(replicaNumber);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        key = new ChordID<>();
+        key.readExternal(in);
+        replicaNumber = in.readUnsignedByte();
+    }
+
     @Override
     public int hashCode() {
         return key.hashCode() * 17 + replicaNumber;
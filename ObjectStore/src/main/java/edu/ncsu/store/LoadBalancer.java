@@ -0,0 +1,216 @@
+package edu.ncsu.store;
+
+import org.apache.log4j.Logger;
+
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.ncsu.chord.ChordID;
+import edu.ncsu.chord.ChordSession;
+
+/**
+ * Moves virtual nodes of this process around the ring to even out the keys, bytes and requests
+ * nodes are primary owners of, after the item balancing of Karger and Ruhl. In every round each
+ * virtual node asks a random node it knows of for its load. If that node carries more than
+ * StoreConfig.LOAD_BALANCE_RATIO times the load of the virtual node, the virtual node gives its
+ * keys to its successor and joins again at the split key of the heavy node, taking over about
+ * half of its keys. Keys move through the leave handoff and NEW_PREDECESSOR paths of
+ * ChordEventHandler.
+ *
+ * Moves are rate limited: at most one virtual node of this process moves per
+ * StoreConfig.LOAD_BALANCE_MIN_INTERVAL, and none if the move would ship more than
+ * StoreConfig.LOAD_BALANCE_MAX_MOVE_BYTES.
+ */
+class LoadBalancer {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(LoadBalancer.class);
+
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "load-balancer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /* Requests served since last round, by virtual node that is primary for the key */
+  private final ConcurrentHashMap<ChordID<InetAddress>, LongAdder> requests =
+      new ConcurrentHashMap<>();
+
+  /* Requests per second by virtual node, measured over the last round */
+  private volatile Map<ChordID<InetAddress>, Double> requestRates = Collections.emptyMap();
+
+  private long lastRoundNanos = System.nanoTime();
+
+  private long lastRelocationMillis;
+
+  static boolean isEnabled() {
+    return StoreConfig.LOAD_BALANCE_PERIOD > 0;
+  }
+
+  void start() {
+    if (isEnabled()) {
+      executor.scheduleWithFixedDelay(this::runRound, StoreConfig.LOAD_BALANCE_PERIOD,
+                                      StoreConfig.LOAD_BALANCE_PERIOD, TimeUnit.SECONDS);
+    }
+  }
+
+  void stop() {
+    executor.shutdownNow();
+  }
+
+  /* Counts a get or put served by this process as primary owner of key */
+  void recordRequest(ChordID<String> key) {
+    if (isEnabled()) {
+      ChordID<InetAddress> virtualNodeID =
+          ObjectStoreService.getChordSession().getHoldingVirtualNode(key);
+      requests.computeIfAbsent(virtualNodeID, id -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Load of the keys virtualNodeID is primary owner of. Returns null if virtualNodeID is not a
+   * virtual node of this process.
+   */
+  NodeLoad measureLoad(ChordID<InetAddress> virtualNodeID) throws RemoteException {
+    ChordSession session = ObjectStoreService.getChordSession();
+    ObjectStore store = ObjectStoreService.getStore();
+    if (session == null || !session.getVirtualNodeIDs().contains(virtualNodeID)) {
+      return null;
+    }
+
+    /* Keys are ordered from the predecessor on: those above the node ID wrap around zero */
+    List<ChordID<String>> keys = new ArrayList<>();
+    Map<ChordID<String>, Integer> sizes = new HashMap<>();
+    long bytes = 0;
+    for (KeyMetadata km : store.keySet()) {
+      if (km.replicaNumber == 1 && session.isResponsibleFor(km.key)
+          && session.getHoldingVirtualNode(km.key).equals(virtualNodeID)) {
+        byte[] value = store.getLocalObject(km.key);
+        int size = value == null ? 0 : value.length;
+        keys.add(km.key);
+        sizes.put(km.key, size);
+        bytes += size;
+      }
+    }
+    keys.sort((a, b) -> {
+      boolean aWraps = a.compareTo(virtualNodeID) > 0;
+      boolean bWraps = b.compareTo(virtualNodeID) > 0;
+      return aWraps != bWraps ? (aWraps ? -1 : 1) : a.compareTo(b);
+    });
+
+    ChordID<String> splitKey = null;
+    if (keys.size() > 1) {
+      long half = 0;
+      for (ChordID<String> key : keys.subList(0, keys.size() - 1)) {
+        splitKey = key;
+        half += sizes.get(key);
+        if (2 * half >= bytes) {
+          break;
+        }
+      }
+    }
+    Double rate = requestRates.get(virtualNodeID);
+    return new NodeLoad(virtualNodeID, keys.size(), bytes, rate == null ? 0 : rate, splitKey);
+  }
+
+  private void runRound() {
+    try {
+      rollRequestRates();
+      balance();
+    } catch (Exception e) {
+      logger.error("Load balancing round failed", e);
+    }
+  }
+
+  private void rollRequestRates() {
+    long now = System.nanoTime();
+    double seconds = Math.max(1e-3, (now - lastRoundNanos) / 1e9);
+    lastRoundNanos = now;
+    Map<ChordID<InetAddress>, Double> rates = new HashMap<>();
+    for (ChordID<InetAddress> virtualNodeID : new ArrayList<>(requests.keySet())) {
+      LongAdder count = requests.remove(virtualNodeID);
+      if (count != null) {
+        rates.put(virtualNodeID, count.sum() / seconds);
+      }
+    }
+    requestRates = rates;
+  }
+
+  private void balance() throws RemoteException {
+    if (System.currentTimeMillis() - lastRelocationMillis
+        < TimeUnit.SECONDS.toMillis(StoreConfig.LOAD_BALANCE_MIN_INTERVAL)) {
+      return;
+    }
+    ChordSession session = ObjectStoreService.getChordSession();
+    List<ChordID<InetAddress>> peers = new ArrayList<>();
+    InetAddress selfIP = session.getChordNodeID().getKey();
+    for (ChordID<InetAddress> nodeID : session.getKnownNodes()) {
+      if (!nodeID.getKey().equals(selfIP)) {
+        peers.add(nodeID);
+      }
+    }
+    if (peers.isEmpty()) {
+      return;
+    }
+
+    for (ChordID<InetAddress> virtualNodeID : session.getVirtualNodeIDs()) {
+      ChordID<InetAddress> peer = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+      if (!session.isAlive(peer)) {
+        continue;
+      }
+      ObjectStoreOperations peerStore = StoreRMIUtils.getRemoteObjectStore(peer.getKey());
+      if (peerStore == null) {
+        continue;
+      }
+      NodeLoad peerLoad;
+      try {
+        peerLoad = peerStore.getLoad(peer);
+      } catch (RemoteException e) {
+        logger.error("Unable to get load of " + peer + ": " + e);
+        continue;
+      }
+      NodeLoad load = measureLoad(virtualNodeID);
+      if (peerLoad == null || load == null || !shouldMoveNextTo(load, peerLoad)) {
+        continue;
+      }
+
+      logger.info("Moving " + load + " next to " + peerLoad + " at " + peerLoad.getSplitKey());
+      ChordID<InetAddress> newID = session.relocate(virtualNodeID, peerLoad.getSplitKey());
+      lastRelocationMillis = System.currentTimeMillis();
+      if (newID != null) {
+        RingSnapshotCache ringCache = ObjectStoreService.getRingCache();
+        ringCache.invalidate(virtualNodeID);
+        for (List<ChordID<InetAddress>> segment : session.getRingSegments()) {
+          ringCache.addSegment(segment);
+        }
+      }
+      /* One move per round, the load of every other node has changed by now */
+      return;
+    }
+  }
+
+  /* True if light is light enough compared to heavy to move next to it and take half its keys */
+  private static boolean shouldMoveNextTo(NodeLoad light, NodeLoad heavy) {
+    if (heavy.getSplitKey() == null || heavy.getKeys() < StoreConfig.LOAD_BALANCE_MIN_KEYS) {
+      return false;
+    }
+    double ratio = StoreConfig.LOAD_BALANCE_RATIO;
+    boolean imbalanced = heavy.getBytes() > ratio * light.getBytes()
+                         || heavy.getRequestsPerSecond() > ratio * light.getRequestsPerSecond();
+    /* Keys of light go to its successor, about half of those of heavy come to light */
+    long movedBytes = light.getBytes() + heavy.getBytes() / 2;
+    return imbalanced && movedBytes <= StoreConfig.LOAD_BALANCE_MAX_MOVE_BYTES;
+  }
+}
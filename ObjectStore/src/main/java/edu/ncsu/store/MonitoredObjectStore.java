@@ -0,0 +1,104 @@
+package edu.ncsu.store;
+
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+
+import edu.ncsu.chord.ChordID;
+import edu.ncsu.chord.ChordSession;
+
+/**
+ * Wraps the stub of a remote object store and tells the chord failure detector how every call made
+ * on it went. Chord only hears from peers through its own calls, so without this a peer serving
+ * store requests would look as silent as a failed one. StoreRMIUtils hands out stores only through
+ * this wrapper.
+ */
+class MonitoredObjectStore implements ObjectStoreOperations {
+
+  private interface StoreCall<R> {
+    R call() throws RemoteException, NotResponsibleException;
+  }
+
+  private final ObjectStoreOperations target;
+
+  /* Machine the calls go to */
+  private final InetAddress peer;
+
+  MonitoredObjectStore(ObjectStoreOperations target, InetAddress peer) {
+    this.target = target;
+    this.peer = peer;
+  }
+
+  private <R> R monitor(StoreCall<R> storeCall) throws RemoteException, NotResponsibleException {
+    try {
+      R result = storeCall.call();
+      record(true);
+      return result;
+    } catch (NotResponsibleException e) {
+      /* Rejecting a key is an answer all the same */
+      record(true);
+      throw e;
+    } catch (RemoteException | RuntimeException e) {
+      record(false);
+      throw e;
+    }
+  }
+
+  private void record(boolean succeeded) {
+    ChordSession session = ObjectStoreService.getChordSession();
+    if (session != null) {
+      session.recordCallResult(peer, succeeded);
+    }
+  }
+
+  private <R> R monitorRemote(StoreCall<R> storeCall) throws RemoteException {
+    try {
+      return monitor(storeCall);
+    } catch (NotResponsibleException e) {
+      /* Only getObject and putObject reject keys */
+      throw new RemoteException("Unexpected rejection by " + peer, e);
+    }
+  }
+
+  @Override
+  public byte[] getObject(ChordID<String> key) throws RemoteException, NotResponsibleException {
+    return monitor(() -> target.getObject(key));
+  }
+
+  @Override
+  public boolean putObject(ChordID<String> key, byte[] value)
+      throws RemoteException, NotResponsibleException {
+    return monitor(() -> target.putObject(key, value));
+  }
+
+  @Override
+  public boolean delete(ChordID<String> key) throws RemoteException {
+    return monitorRemote(() -> target.delete(key));
+  }
+
+  @Override
+  public boolean putObjects(Map<KeyMetadata, byte[]> keyValueMap) throws RemoteException {
+    return monitorRemote(() -> target.putObjects(keyValueMap));
+  }
+
+  @Override
+  public boolean makeReplicas(Map<KeyMetadata, byte[]> replicaData) throws RemoteException {
+    return monitorRemote(() -> target.makeReplicas(replicaData));
+  }
+
+  @Override
+  public boolean removeReplica(ChordID<String> key) throws RemoteException {
+    return monitorRemote(() -> target.removeReplica(key));
+  }
+
+  @Override
+  public List<KeyMetadata> keySet() throws RemoteException {
+    return monitorRemote(() -> target.keySet());
+  }
+
+  @Override
+  public NodeLoad getLoad(ChordID<InetAddress> virtualNodeID) throws RemoteException {
+    return monitorRemote(() -> target.getLoad(virtualNodeID));
+  }
+}
@@ -0,0 +1,59 @@
+package edu.ncsu.store;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+
+import edu.ncsu.chord.ChordID;
+
+/**
+ * Load of one virtual node as reported to LoadBalancer of other nodes: keys it is the primary
+ * owner of, their size, and requests it served per second over the last balancing round.
+ * splitKey is the key up to which about half of those bytes lie, counting from its predecessor;
+ * a node moving to splitKey takes that half over. It is null if there is nothing to split.
+ */
+public class NodeLoad implements Serializable {
+
+  private final ChordID<InetAddress> virtualNodeID;
+
+  private final int keys;
+
+  private final long bytes;
+
+  private final double requestsPerSecond;
+
+  private final ChordID<String> splitKey;
+
+  NodeLoad(ChordID<InetAddress> virtualNodeID, int keys, long bytes, double requestsPerSecond,
+           ChordID<String> splitKey) {
+    this.virtualNodeID = virtualNodeID;
+    this.keys = keys;
+    this.bytes = bytes;
+    this.requestsPerSecond = requestsPerSecond;
+    this.splitKey = splitKey;
+  }
+
+  public ChordID<InetAddress> getVirtualNodeID() {
+    return virtualNodeID;
+  }
+
+  public int getKeys() {
+    return keys;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public double getRequestsPerSecond() {
+    return requestsPerSecond;
+  }
+
+  public ChordID<String> getSplitKey() {
+    return splitKey;
+  }
+
+  public String toString() {
+    return "[" + virtualNodeID + ", " + keys + " keys, " + bytes + " bytes, "
+           + String.format("%.1f", requestsPerSecond) + " req/s]";
+  }
+}
@@ -0,0 +1,12 @@
+package edu.ncsu.store;
+
+/**
+ * Thrown by an object store when it is asked to get or put a key that it is not the primary owner
+ * of. The caller should find the owner of that key again through chord.
+ */
+public class NotResponsibleException extends Exception {
+
+  public NotResponsibleException(String message) {
+    super(message);
+  }
+}
@@ -37,7 +37,9 @@ class ObjectStore implements ObjectStoreOperations {
   the replicaNumber (which is a metadata field) and then call putObjects method. This method will
   then replicate the data and also store that data in its local store. */
   @Override
-  public byte[] getObject(ChordID<String> key) throws RemoteException {
+  public byte[] getObject(ChordID<String> key) throws RemoteException, NotResponsibleException {
+    checkResponsibleFor(key);
+    ObjectStoreService.getLoadBalancer().recordRequest(key);
     if (!localStorage.containsKey(key.getKey())) {
       return null;
     } else {
@@ -46,7 +48,10 @@ class ObjectStore implements ObjectStoreOperations {
   }
 
   @Override
-  public boolean putObject(ChordID<String> key, byte[] value) throws RemoteException {
+  public boolean putObject(ChordID<String> key, byte[] value)
+      throws RemoteException, NotResponsibleException {
+    checkResponsibleFor(key);
+    ObjectStoreService.getLoadBalancer().recordRequest(key);
     try {
       logger.info("Creating first copy of " + key +
                   " on Node: " + ObjectStoreService.getChordSession().getChordNodeID());
@@ -54,7 +59,10 @@ class ObjectStore implements ObjectStoreOperations {
       KeyMetadata km = new KeyMetadata(key);
       km.setReplicaNumber(1);
       replicaData.put(km, value);
-      putObjects(replicaData);
+      if (!putObjects(replicaData)) {
+        logger.error("Stored " + key + " but could not replicate it");
+        return false;
+      }
     } catch (Exception e) {
       e.printStackTrace();
       return false;
@@ -68,14 +76,22 @@ class ObjectStore implements ObjectStoreOperations {
     return true;
   }
 
+  /* Coordinators route to cached owners, so reject keys whose primary owner is some other node */
+  private void checkResponsibleFor(ChordID<String> key) throws NotResponsibleException {
+    ChordSession session = ObjectStoreService.getChordSession();
+    if (!session.isResponsibleFor(key)) {
+      throw new NotResponsibleException("Node " + session.getChordNodeID()
+                                        + " is not responsible for key " + key);
+    }
+  }
+
 
 
   /* Method for internal usage of objectStore - Not to be used by StoreClientImpl */
 
   @Override
   public boolean putObjects(Map<KeyMetadata, byte[]> keyValueMap) throws RemoteException {
-    boolean result = true;
-    makeReplicas(keyValueMap);
+    boolean result = makeReplicas(keyValueMap);
 //    for (Map.Entry<ChordID<String>, DataContainer> e : keyValueMap.entrySet()) {
 //      try {
 //        localStorage.put(e.getKey().getKey(), e.getValue());
@@ -93,6 +109,7 @@ class ObjectStore implements ObjectStoreOperations {
     /* ReplicaData is set of keys that needs to be replicated. However for few of them this node
     might be the last copy node. So separate those keys from the keys that needs to be passed further
      */
+    boolean replicated = true;
     Map<KeyMetadata, byte[]> furtherPassedKeys = new HashMap<>();
     for (KeyMetadata km : replicaData.keySet()) {
       if ((km.replicaNumber + 1) <= StoreConfig.REPLICATION_COUNT) {
@@ -104,9 +121,31 @@ class ObjectStore implements ObjectStoreOperations {
     }
 
     if (furtherPassedKeys.size() > 0) {
-      ChordID<InetAddress> successorChordID = ObjectStoreService.getChordSession().getSelfSuccessor();
-      ObjectStoreOperations successorStore = StoreRMIUtils.getRemoteObjectStore(successorChordID.getKey());
-      successorStore.makeReplicas(furtherPassedKeys);
+      /* Each key is passed on through successor of the virtual node of this process holding it */
+      ChordSession session = ObjectStoreService.getChordSession();
+      Map<ChordID<InetAddress>, Map<KeyMetadata, byte[]>> keysBySuccessor = new HashMap<>();
+      for (Map.Entry<KeyMetadata, byte[]> e : furtherPassedKeys.entrySet()) {
+        ChordID<InetAddress> successorChordID =
+            session.getReplicationSuccessor(session.getHoldingVirtualNode(e.getKey().key));
+        keysBySuccessor.computeIfAbsent(successorChordID, k -> new HashMap<>())
+            .put(e.getKey(), e.getValue());
+      }
+      for (Map.Entry<ChordID<InetAddress>, Map<KeyMetadata, byte[]>> e : keysBySuccessor.entrySet()) {
+        /* Stabilization replicates again through the next successor once this one is replaced,
+        the keys are still stored here but the caller is told replication did not happen */
+        if (!session.isAlive(e.getKey())) {
+          logger.error("Successor " + e.getKey() + " is suspected to have failed, not replicating");
+          replicated = false;
+          continue;
+        }
+        ObjectStoreOperations successorStore = StoreRMIUtils.getRemoteObjectStore(e.getKey().getKey());
+        try {
+          replicated &= successorStore != null && successorStore.makeReplicas(e.getValue());
+        } catch (RemoteException ex) {
+          logger.error("Unable to replicate on " + e.getKey() + ": " + ex);
+          replicated = false;
+        }
+      }
     }
 
     try {
@@ -124,7 +163,7 @@ class ObjectStore implements ObjectStoreOperations {
       ex.printStackTrace();
       return false;
     }
-    return true;
+    return replicated;
   }
 
   @Override
@@ -137,6 +176,36 @@ class ObjectStore implements ObjectStoreOperations {
     return localStorage.keySet();
   }
 
+  @Override
+  public NodeLoad getLoad(ChordID<InetAddress> virtualNodeID) throws RemoteException {
+    return ObjectStoreService.getLoadBalancer().measureLoad(virtualNodeID);
+  }
+
+  /* Value of key in local storage, whichever node it belongs to. Used for key movement and
+  replication, which read keys this node is not or no longer the primary owner of, so neither
+  ownership is checked nor the read counted as a client request */
+  byte[] getLocalObject(ChordID<String> key) {
+    return localStorage.get(key.getKey());
+  }
+
+  /* Keeps keys that were handed over to another node as last copies only, so that they are no
+  longer moved, handed over or replicated from here as first copies. Keys stored here again as
+  some other copy in the meantime are left alone */
+  void demoteLocalObjects(Set<ChordID<String>> keys) {
+    for (KeyMetadata km : localStorage.keySet()) {
+      if (km.replicaNumber != 1 || !keys.contains(km.key)) {
+        continue;
+      }
+      KeyMetadata lastCopy = new KeyMetadata(km.key);
+      lastCopy.setReplicaNumber(StoreConfig.REPLICATION_COUNT);
+      try {
+        localStorage.put(lastCopy, localStorage.get(km.key.getKey()));
+      } catch (Exception e) {
+        logger.error("Unable to demote " + km.key + ": " + e);
+      }
+    }
+  }
+
 //  /* this method is written only for testing purposes */
 //  public HashMap<String, DataContainer> dumpStore() {
 //    return localStorage.dumpStorage();
@@ -14,10 +14,13 @@ public interface ObjectStoreOperations extends Remote {
 
   /* The getObject, putObject and deleteObject methods are only to be used by
   StoreClientAPIImpl. These should not be used by communication between
-  different object stores. The methods for that communication are given below */
-  byte[] getObject(ChordID<String> key) throws RemoteException;
+  different object stores. The methods for that communication are given below.
+  Callers may use a cached owner for the key, so getObject and putObject throw
+  NotResponsibleException if this node is not the primary owner of that key */
+  byte[] getObject(ChordID<String> key) throws RemoteException, NotResponsibleException;
 
-  boolean putObject(ChordID<String> key, byte[] value) throws RemoteException;
+  boolean putObject(ChordID<String> key, byte[] value)
+      throws RemoteException, NotResponsibleException;
 
   boolean delete(ChordID<String> key) throws RemoteException;
 
@@ -34,4 +37,8 @@ public interface ObjectStoreOperations extends Remote {
   boolean removeReplica(ChordID<String> key) throws RemoteException;
 
   List<KeyMetadata> keySet() throws RemoteException;
+
+  /* Load of virtualNodeID of this process, used by LoadBalancer of other nodes. Returns null if
+  virtualNodeID is not hosted here */
+  NodeLoad getLoad(ChordID<InetAddress> virtualNodeID) throws RemoteException;
 }
@@ -1,12 +1,15 @@
 package edu.ncsu.store;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.rmi.server.RMISocketFactory;
+import java.util.List;
 
 import edu.ncsu.chord.ChordDriver;
+import edu.ncsu.chord.ChordID;
 import edu.ncsu.chord.ChordSession;
 
 /**
@@ -20,6 +23,12 @@ class ObjectStoreService {
   /* Reference to ObjectStore */
   private static ObjectStore store = null;
 
+  /* Snapshot of ring members used to find owners of keys without chord lookups */
+  private static RingSnapshotCache ringCache = new RingSnapshotCache();
+
+  /* Moves virtual nodes of this process to even out load, if enabled in StoreConfig */
+  private static LoadBalancer loadBalancer = new LoadBalancer();
+
   static ChordSession getChordSession() {
     return chordSession;
   }
@@ -28,6 +37,14 @@ class ObjectStoreService {
     return store;
   }
 
+  static RingSnapshotCache getRingCache() {
+    return ringCache;
+  }
+
+  static LoadBalancer getLoadBalancer() {
+    return loadBalancer;
+  }
+
   private static void initRMI() {
     try {
     /* Set custom SocketFactories for handling RMI timeout */
@@ -68,7 +85,18 @@ class ObjectStoreService {
     chordSession.registerUpcall(new ChordEventHandler());
     System.out.println("chord upcall registerd");
     chordSession.join();
+    for (List<ChordID<InetAddress>> segment : chordSession.getRingSegments()) {
+      ringCache.addSegment(segment);
+    }
     System.out.println("chord network join done..");
+    loadBalancer.start();
+
+    /* Leave gracefully on shutdown so that a restart hands keys over instead of looking like a crash */
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      System.out.println("Leaving chord network..");
+      loadBalancer.stop();
+      chordSession.leave();
+    }, "chord-leave"));
 
 
     /* create client API object and export it for RMI */
@@ -0,0 +1,134 @@
+package edu.ncsu.store;
+
+import org.apache.log4j.Logger;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.ncsu.chord.ChordID;
+import edu.ncsu.chord.Hash;
+
+/**
+ * Owner ranges of the ring known to this coordinator. It is used to map a key to its responsible
+ * node by binary search, without making any chord lookup. Ranges are learned from the predecessor
+ * and successor list of local virtual nodes and from completed lookups, never guessed from a node
+ * merely being known, so a key outside all of them is left to a chord lookup. A range may be
+ * stale. Its owner then rejects the key and the caller invalidates that node and falls back to a
+ * chord lookup.
+ */
+class RingSnapshotCache {
+
+  /* Keep all loggers transient so that they are not passed over RMI call */
+  private final transient static Logger logger = Logger.getLogger(RingSnapshotCache.class);
+
+  /* Known owners and the start of the range each owns, i.e. its predecessor. Only changed under
+  the lock of this cache, readers use the published snapshot */
+  private final TreeMap<ChordID<InetAddress>, ChordID<InetAddress>> ranges = new TreeMap<>();
+
+  /* Owners sorted by their ID and their range starts at the same positions. Never modified, a new
+  snapshot is published on change */
+  private volatile Snapshot snapshot = new Snapshot(ranges);
+
+  /**
+   * Returns the node owning key if key lies in a known range, null otherwise.
+   */
+  ChordID<InetAddress> getResponsibleNode(Hash key) {
+    Snapshot current = snapshot;
+    ChordID<InetAddress>[] owners = current.owners;
+    if (owners.length == 0) {
+      return null;
+    }
+    int low = 0;
+    int high = owners.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (owners[mid].compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    int owner = low == owners.length ? 0 : low;
+    return key.inRange(current.starts[owner], owners[owner], false, true) ? owners[owner] : null;
+  }
+
+  /* Learn that owner is responsible for the keys in (start, owner] */
+  synchronized void addRange(ChordID<InetAddress> start, ChordID<InetAddress> owner) {
+    if (putRange(start, owner)) {
+      publish();
+    }
+  }
+
+  /**
+   * Learn the ranges of a run of consecutive ring members, e.g. a predecessor, a node and its
+   * successor list. Each node owns the keys between the node before it and itself.
+   */
+  synchronized void addSegment(List<ChordID<InetAddress>> segment) {
+    boolean changed = false;
+    for (int i = 1; i < segment.size(); i++) {
+      changed |= putRange(segment.get(i - 1), segment.get(i));
+    }
+    if (changed) {
+      publish();
+    }
+  }
+
+  /* Remove a node that has failed or turned out not to own the keys mapped to it */
+  synchronized void invalidate(ChordID<InetAddress> nodeID) {
+    if (ranges.remove(nodeID) != null) {
+      publish();
+    }
+  }
+
+  int size() {
+    return snapshot.owners.length;
+  }
+
+  /* Adds (start, owner], dropping known ranges it contradicts. Returns true if anything changed */
+  private boolean putRange(ChordID<InetAddress> start, ChordID<InetAddress> owner) {
+    if (start == null || owner == null || start.equals(owner) || start.equals(ranges.get(owner))) {
+      return false;
+    }
+    Iterator<Map.Entry<ChordID<InetAddress>, ChordID<InetAddress>>> it =
+        ranges.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<ChordID<InetAddress>, ChordID<InetAddress>> range = it.next();
+      /* A node inside the new range, or a range holding the new owner, is out of date */
+      if (range.getKey().inRange(start, owner, false, false)
+          || owner.inRange(range.getValue(), range.getKey(), false, false)) {
+        it.remove();
+      }
+    }
+    ranges.put(owner, start);
+    return true;
+  }
+
+  private void publish() {
+    snapshot = new Snapshot(ranges);
+    logger.debug("Ring snapshot updated: " + ranges);
+  }
+
+  private static final class Snapshot {
+    final ChordID<InetAddress>[] owners;
+    final ChordID<InetAddress>[] starts;
+
+    Snapshot(TreeMap<ChordID<InetAddress>, ChordID<InetAddress>> ranges) {
+      owners = newRing(ranges.size());
+      starts = newRing(ranges.size());
+      int i = 0;
+      for (Map.Entry<ChordID<InetAddress>, ChordID<InetAddress>> range : ranges.entrySet()) {
+        owners[i] = range.getKey();
+        starts[i] = range.getValue();
+        i++;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ChordID<InetAddress>[] newRing(int size) {
+    return (ChordID<InetAddress>[]) new ChordID[size];
+  }
+}
@@ -13,6 +13,7 @@ import java.util.*;
 
 import edu.ncsu.chord.ChordID;
 import edu.ncsu.chord.ChordSession;
+import edu.ncsu.chord.LookupResult;
 
 /**
  * Created by amit on 1/4/17.
@@ -37,15 +38,71 @@ public class StoreClientAPIImpl implements StoreClientAPI {
   }
 
 
+  /* A get or put call to be made on the object store responsible for a key */
+  private interface StoreCall<R> {
+    R call(ObjectStoreOperations store) throws RemoteException, NotResponsibleException;
+  }
+
+  /**
+   * Makes storeCall on the primary owner of chordKey. The owner is first taken from the owner
+   * ranges of the ring snapshot, or from the chord membership table in one hop routing mode,
+   * without any network hop. If no known range holds the key, or the node is unreachable or rejects
+   * the key, the owner is looked up by routing through chord instead and the range it owns is
+   * remembered. A node that rejected the key is invalidated in the snapshot first. In one hop mode
+   * the membership table is corrected as well, otherwise it would keep picking the same wrong node.
+   */
+  private <R> R callResponsibleStore(ChordID<String> chordKey, StoreCall<R> storeCall)
+      throws RemoteException, NotResponsibleException {
+    ChordSession session = ObjectStoreService.getChordSession();
+    RingSnapshotCache ringCache = ObjectStoreService.getRingCache();
+    ChordID<InetAddress> cachedNodeID = session.isOneHopRouting()
+                                        ? session.getResponsibleNodeID(chordKey)
+                                        : ringCache.getResponsibleNode(chordKey);
+    /* Do not wait on an owner the failure detector already suspects */
+    if (cachedNodeID != null && !session.isAlive(cachedNodeID)) {
+      ringCache.invalidate(cachedNodeID);
+      cachedNodeID = null;
+    }
+    boolean cachedUnreachable = true;
+    if (cachedNodeID != null) {
+      ObjectStoreOperations cachedStore = StoreRMIUtils.getRemoteObjectStore(cachedNodeID.getKey());
+      try {
+        if (cachedStore != null) {
+          return storeCall.call(cachedStore);
+        }
+      } catch (NotResponsibleException e) {
+        logger.debug("Cached owner " + cachedNodeID + " rejected " + chordKey + ": " + e);
+        cachedUnreachable = false;
+      } catch (RemoteException e) {
+        logger.debug("Cached owner " + cachedNodeID + " failed for " + chordKey + ": " + e);
+      }
+      ringCache.invalidate(cachedNodeID);
+    }
+
+    LookupResult lookup = session.lookupByRouting(chordKey);
+    ChordID<InetAddress> responsibleNodeID = lookup == null ? null : lookup.getNodeID();
+    if (cachedNodeID != null && session.isOneHopRouting()) {
+      session.correctOwner(cachedNodeID, cachedUnreachable, responsibleNodeID);
+    }
+    if (responsibleNodeID == null) {
+      throw new RemoteException("Unable to find responsible node for " + chordKey);
+    }
+    ringCache.addRange(lookup.getPredecessorID(), responsibleNodeID);
+    ObjectStoreOperations responsibleStore =
+        StoreRMIUtils.getRemoteObjectStore(responsibleNodeID.getKey());
+    if (responsibleStore == null) {
+      throw new RemoteException("Unable to get object store of " + responsibleNodeID);
+    }
+    return storeCall.call(responsibleStore);
+  }
+
   @Override
   public Object get(String key) throws RemoteException {
     ChordSession session = ObjectStoreService.getChordSession();
     ChordID<String> chordKey = new ChordID<>(key);
-    ChordID<InetAddress> responsibleNodeID = session.getResponsibleNodeID(chordKey);
-    ObjectStoreOperations responsibleStore = StoreRMIUtils.getRemoteObjectStore(responsibleNodeID.getKey());
     Object value = null;
     try {
-      byte[] val = responsibleStore.getObject(chordKey);
+      byte[] val = callResponsibleStore(chordKey, store -> store.getObject(chordKey));
       if (val == null) {
         logger.error("Key " + key + " not found on " + session.getChordNodeID());
       } else {
@@ -59,14 +116,14 @@ public class StoreClientAPIImpl implements StoreClientAPI {
 
   @Override
   public void put(String key, Object value) throws RemoteException {
-    ChordSession session = ObjectStoreService.getChordSession();
     ChordID<String> chordKey = new ChordID<>(key);
-    ChordID<InetAddress> responsibleNodeID = session.getResponsibleNodeID(chordKey);
-    ObjectStoreOperations responsibleStore = StoreRMIUtils.getRemoteObjectStore(responsibleNodeID.getKey());
 
     /* Serialize the value */
     try {
-      responsibleStore.putObject(chordKey, serialize(value));
+      byte[] serializedValue = serialize(value);
+      if (!callResponsibleStore(chordKey, store -> store.putObject(chordKey, serializedValue))) {
+        logger.error("Put of " + key + " failed or was not replicated");
+      }
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -13,4 +13,20 @@ public class StoreConfig {
 
   /* RMI Call timeout - Seconds to wait before call is considered as failed */
   static int RMI_TIMEOUT = 1;
+
+  /* Seconds between two load balancing rounds, 0 turns load balancing off
+  (-Dstore.loadBalancePeriod) */
+  static int LOAD_BALANCE_PERIOD = Integer.getInteger("store.loadBalancePeriod", 0);
+
+  /* A node moves next to another one only if that one has this many times its bytes or requests */
+  static double LOAD_BALANCE_RATIO = 4.0;
+
+  /* Nodes that are primary owner of fewer keys are never split */
+  static int LOAD_BALANCE_MIN_KEYS = 64;
+
+  /* Seconds after a node of this process moved before another one may move */
+  static int LOAD_BALANCE_MIN_INTERVAL = 300;
+
+  /* Most bytes one move may ship between nodes, larger moves are not made at all */
+  static long LOAD_BALANCE_MAX_MOVE_BYTES = 256L * 1024 * 1024;
 }
@@ -9,6 +9,8 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 
+import edu.ncsu.chord.ChordSession;
+
 
 /**
  * Created by amit on 24/3/17.
@@ -69,32 +71,32 @@ class StoreRMIUtils {
   }
 
 
+  /**
+   * Returns object store of the process running on ip, or null if it can not be reached. A peer
+   * the failure detector suspects is not dialed, and a failed lookup is reported to the failure
+   * detector instead of being tried again, so a dead peer costs at most one RMI timeout.
+   */
   static ObjectStoreOperations getRemoteObjectStore(InetAddress ip) {
+    ChordSession session = ObjectStoreService.getChordSession();
+    if (session != null && !session.shouldContact(ip)) {
+      logger.error("Object store of " + ip + " is suspected to have failed, not contacting it");
+      return null;
+    }
     /* INetAddress toString adds a '/' at the beginning remove that */
     String serverURL = "rmi://" + ip.toString().substring(1) + "/ObjectStoreOperations";
-    ObjectStoreOperations store = null;
     try {
-      store = (ObjectStoreOperations) Naming.lookup(serverURL);
+      ObjectStoreOperations store = (ObjectStoreOperations) Naming.lookup(serverURL);
       if (store == null) {
 	throw new RemoteException();
       }
+      return new MonitoredObjectStore(store, ip);
     } catch (Exception e) {
-      /* TODO: Need to do all RMI exception handling
-      Why did RMI execution fail
-      Node down? Node failure? Network partitioning? New node arrival?
-       */
-      e.printStackTrace();
-      logger.error("Unable to get Remote object for " + ip + " Trying one more time...");
-      /* Try one more time before giving up */
-      try {
-	store = (ObjectStoreOperations) Naming.lookup(serverURL);
-      } catch (Exception nestedException) {
-	nestedException.printStackTrace();
-	store = null;
+      logger.error("Unable to get Remote object for " + ip + ": " + e);
+      if (session != null) {
+        session.recordCallResult(ip, false);
       }
-      e.printStackTrace();
+      return null;
     }
-    return store;
   }
 
 }
@@ -0,0 +1,88 @@
+package edu.ncsu.chord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing a key into an ID with each HashFunction, done for every key a client touches and for every node at startup, and
+ * equals/hashCode of IDs, done on every stub cache, failure detector and key map access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChordIDBenchmark {
+
+  private static final int ID_COUNT = 1024;
+
+  @Param({"SHA256", "MURMUR3_UTF16"})
+  public String hashFunction;
+
+  private String[] keys;
+
+  private ChordID<String>[] ids;
+
+  /* Equal to ids but distinct objects, so equals can not take the identity shortcut */
+  private ChordID<String>[] copies;
+
+  private int index;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    ChordConfig.HASH_FUNCTION = HashFunction.valueOf(hashFunction);
+    keys = new String[ID_COUNT];
+    ids = new ChordID[ID_COUNT];
+    copies = new ChordID[ID_COUNT];
+    for (int i = 0; i < ID_COUNT; i++) {
+      keys[i] = "key-" + i;
+      ids[i] = new ChordID<>(keys[i]);
+      copies[i] = new ChordID<>(keys[i]);
+    }
+  }
+
+  private int nextIndex() {
+    index = (index + 1) & (ID_COUNT - 1);
+    return index;
+  }
+
+  @Benchmark
+  public SHA256Hash sha256Hash() {
+    return new SHA256Hash(keys[nextIndex()], ChordID.MAX_BITS);
+  }
+
+  @Benchmark
+  public ChordID<String> chordID() {
+    return new ChordID<>(keys[nextIndex()]);
+  }
+
+  @Benchmark
+  public boolean equalsSame() {
+    int i = nextIndex();
+    return ids[i].equals(copies[i]);
+  }
+
+  @Benchmark
+  public boolean equalsDifferent() {
+    int i = nextIndex();
+    return ids[i].equals(copies[(i + 1) & (ID_COUNT - 1)]);
+  }
+
+  @Benchmark
+  public int hashCodeOf() {
+    return ids[nextIndex()].hashCode();
+  }
+}
@@ -0,0 +1,104 @@
+package edu.ncsu.chord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of a single node ID and key ID, as sent in every RPC argument and result: "java" is
+ * Java serialization as used by RMI, "wire" is the binary encoding of the NIO transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChordIDSerializationBenchmark {
+
+  private ChordID<InetAddress> nodeID;
+
+  private ChordID<String> keyID;
+
+  private byte[] javaNodeID;
+
+  private byte[] javaKeyID;
+
+  private byte[] wireNodeID;
+
+  @Setup
+  public void setup() throws IOException {
+    nodeID = new ChordID<>(InetAddress.getByName("172.17.0.5"));
+    keyID = new ChordID<>("user:12345");
+    javaNodeID = javaWrite(nodeID);
+    javaKeyID = javaWrite(keyID);
+    wireNodeID = wireWrite(nodeID);
+  }
+
+  private static byte[] javaWrite(Object id) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(id);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Object javaRead(byte[] bytes) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return in.readObject();
+    }
+  }
+
+  private static byte[] wireWrite(Hash id) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    ChordWireCodec.writeHash(new DataOutputStream(bytes), id);
+    return bytes.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] javaWriteNodeID() throws IOException {
+    return javaWrite(nodeID);
+  }
+
+  @Benchmark
+  public Object javaReadNodeID() throws IOException, ClassNotFoundException {
+    return javaRead(javaNodeID);
+  }
+
+  @Benchmark
+  public byte[] javaWriteKeyID() throws IOException {
+    return javaWrite(keyID);
+  }
+
+  @Benchmark
+  public Object javaReadKeyID() throws IOException, ClassNotFoundException {
+    return javaRead(javaKeyID);
+  }
+
+  @Benchmark
+  public byte[] wireWriteNodeID() throws IOException {
+    return wireWrite(nodeID);
+  }
+
+  @Benchmark
+  public Hash wireReadNodeID() throws IOException {
+    return ChordWireCodec.readHash(ByteBuffer.wrap(wireNodeID));
+  }
+}
@@ -0,0 +1,88 @@
+package edu.ncsu.chord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finger table scan of getClosestPrecedingFinger, run at every hop of every lookup. The node is
+ * part of a ring of ringSize nodes connected by InMemoryTransport, so its fingers are the ones a
+ * real node of that ring would have.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerTableBenchmark {
+
+  private static final int ID_COUNT = 1024;
+
+  private static final int STABILIZATION_ROUNDS = 3;
+
+  @Param({"64", "1024"})
+  public int ringSize;
+
+  private ChordNode node;
+
+  private ChordID<String>[] ids;
+
+  private int index;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() throws Exception {
+    ChordConfig.PHI_THRESHOLD = Double.MAX_VALUE;
+    InMemoryTransport transport = new InMemoryTransport(0, 0, 1);
+    ChordRMIUtils.setTransport(transport);
+
+    List<ChordNode> ring = new ArrayList<>();
+    for (int i = 1; i <= ringSize; i++) {
+      InetAddress ip = InetAddress.getByAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i});
+      ChordNode ringNode = new ChordNode(ip, 0, new UpcallDispatcher(Runnable::run));
+      transport.register(ringNode);
+      ring.add(ringNode);
+    }
+    /* Joining in ring order through the previous node gives every node its right successor */
+    ring.sort(Comparator.comparing(n -> n.selfChordID));
+    for (int i = 0; i < ring.size(); i++) {
+      ArrayList<InetAddress> bootstrap = new ArrayList<>();
+      bootstrap.add(ring.get(i == 0 ? 0 : i - 1).selfIP);
+      ring.get(i).join(bootstrap);
+    }
+    for (int round = 0; round < STABILIZATION_ROUNDS; round++) {
+      for (ChordNode ringNode : ring) {
+        ringNode.stabilize();
+        ringNode.fixFingers();
+      }
+    }
+    node = ring.get(0);
+
+    ids = new ChordID[ID_COUNT];
+    for (int i = 0; i < ID_COUNT; i++) {
+      ids[i] = new ChordID<>("key-" + i);
+    }
+  }
+
+  @Benchmark
+  public ChordID<InetAddress> closestPrecedingFinger() throws RemoteException {
+    index = (index + 1) & (ID_COUNT - 1);
+    return node.getClosestPrecedingFinger(node.selfChordID, ids[index]);
+  }
+}
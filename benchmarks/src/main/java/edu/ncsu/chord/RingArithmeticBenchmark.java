@@ -0,0 +1,65 @@
+package edu.ncsu.chord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ring arithmetic done on every finger scan, notify and key rebalancing: inRange, compareTo and
+ * next. IDs are taken round robin from a fixed set so that results do not depend on one value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingArithmeticBenchmark {
+
+  private static final int ID_COUNT = 1024;
+
+  private ChordID<String>[] ids;
+
+  private int index;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    ids = new ChordID[ID_COUNT];
+    for (int i = 0; i < ID_COUNT; i++) {
+      ids[i] = new ChordID<>("key-" + i);
+    }
+  }
+
+  private int nextIndex() {
+    index = (index + 1) & (ID_COUNT - 1);
+    return index;
+  }
+
+  @Benchmark
+  public boolean inRange() {
+    int i = nextIndex();
+    return ids[i].inRange(ids[(i + 1) & (ID_COUNT - 1)], ids[(i + 2) & (ID_COUNT - 1)], false, true);
+  }
+
+  @Benchmark
+  public int compareTo() {
+    int i = nextIndex();
+    return ids[i].compareTo(ids[(i + 1) & (ID_COUNT - 1)]);
+  }
+
+  @Benchmark
+  public Hash next() {
+    int i = nextIndex();
+    return ids[i].next(i % ChordID.MAX_BITS);
+  }
+}
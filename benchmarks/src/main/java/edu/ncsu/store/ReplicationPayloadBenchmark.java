@@ -0,0 +1,151 @@
+package edu.ncsu.store;
+
+import edu.ncsu.chord.ChordID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization of the Map<KeyMetadata, byte[]> that putObjects ships on every replication and
+ * key handoff. "compact" is the Externalizable encoding of KeyMetadata and ChordID. "default" uses
+ * copies of the classes as they were before that encoding, with the same fields and hierarchy and
+ * default serialization. KeyMetadata was not Serializable then, so its copy is what it would have
+ * cost had it been marked so. The copies have longer class names than the originals, which adds a
+ * few bytes once per stream as class descriptors are written only once.
+ *
+ * Payload sizes are printed by main, e.g.
+ *   java -cp benchmarks/target/benchmarks.jar edu.ncsu.store.ReplicationPayloadBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationPayloadBenchmark {
+
+  /* SHA256Hash before it was Externalizable. Hash words are fixed width, their values do not
+  change the size */
+  private static class DefaultHash implements Serializable {
+    private long hashValue;
+    private long hashValueMid;
+    private long hashValueHigh;
+    private int MAX_BITS;
+
+    DefaultHash(int hashCode) {
+      hashValue = hashCode;
+      MAX_BITS = ChordID.MAX_BITS;
+    }
+  }
+
+  /* ChordID before it was Externalizable */
+  private static class DefaultChordID<T> extends DefaultHash {
+    T key;
+    int virtualIndex;
+
+    DefaultChordID(ChordID<T> id) {
+      super(id.hashCode());
+      key = id.getKey();
+      virtualIndex = id.getVirtualIndex();
+    }
+  }
+
+  /* KeyMetadata before it was Externalizable, had it been Serializable */
+  private static class DefaultKeyMetadata implements Serializable {
+    DefaultChordID<String> key;
+    int replicaNumber;
+
+    DefaultKeyMetadata(ChordID<String> key, int replicaNumber) {
+      this.key = new DefaultChordID<>(key);
+      this.replicaNumber = replicaNumber;
+    }
+  }
+
+  @Param({"1000"})
+  public int keys;
+
+  private HashMap<KeyMetadata, byte[]> compact;
+
+  private HashMap<DefaultKeyMetadata, byte[]> defaultForm;
+
+  private byte[] compactBytes;
+
+  private byte[] defaultBytes;
+
+  @Setup
+  public void setup() throws IOException {
+    compact = new HashMap<>();
+    defaultForm = new HashMap<>();
+    byte[] value = new byte[16];
+    for (int i = 0; i < keys; i++) {
+      ChordID<String> id = new ChordID<>("user:" + i);
+      KeyMetadata km = new KeyMetadata(id);
+      km.setReplicaNumber(1);
+      compact.put(km, value);
+      defaultForm.put(new DefaultKeyMetadata(id, 1), value);
+    }
+    compactBytes = serialize(compact);
+    defaultBytes = serialize(defaultForm);
+  }
+
+  /* Prints payload sizes in bytes of both forms */
+  public static void main(String[] args) throws IOException {
+    ReplicationPayloadBenchmark benchmark = new ReplicationPayloadBenchmark();
+    benchmark.keys = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    benchmark.setup();
+    System.out.println(benchmark.keys + " keys: compact " + benchmark.compactBytes.length
+                       + " bytes, default " + benchmark.defaultBytes.length + " bytes");
+  }
+
+  private static byte[] serialize(Object payload) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(payload);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+      return in.readObject();
+    }
+  }
+
+  @Benchmark
+  public byte[] writeCompact() throws IOException {
+    return serialize(compact);
+  }
+
+  @Benchmark
+  public byte[] writeDefault() throws IOException {
+    return serialize(defaultForm);
+  }
+
+  @Benchmark
+  public Object readCompact() throws IOException, ClassNotFoundException {
+    return deserialize(compactBytes);
+  }
+
+  @Benchmark
+  public Object readDefault() throws IOException, ClassNotFoundException {
+    return deserialize(defaultBytes);
+  }
+}